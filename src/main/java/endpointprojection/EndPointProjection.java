@@ -3,6 +3,7 @@ package endpointprojection;
 import extraction.choreography.Choreography;
 import extraction.choreography.Program;
 import extraction.network.Behaviour;
+import extraction.network.BehaviourInterner;
 import extraction.network.Network;
 import extraction.network.ProcessTerm;
 import parsing.Parser;
@@ -55,9 +56,9 @@ public class EndPointProjection {
         networkMap.forEach((processName, term) -> {
             var repairer = new SpawnRepair(processName, networkMap);
             var procedures = new HashMap<String, Behaviour>();
-            var parameters = new HashMap<>(term.parameters);//Copy parameters
+            var parameters = new HashMap<>(term.procedures().parameters());//Copy parameters
             //Fix the procedures
-            term.procedures.forEach((procedure, behaviour) -> {
+            term.procedures().forEach((procedure, behaviour) -> {
                 procedures.put(procedure, repairer.Visit(behaviour));
             });
             //Fix the main behaviour
@@ -65,7 +66,9 @@ public class EndPointProjection {
             //repairer accumulates procedures that the spawned processes use. Add those to the parent's procedures
             procedures.putAll(repairer.spawnedProcedures);
             parameters.putAll(repairer.spawnedProcedureParameters);
-            fixedMap.put(processName, new ProcessTerm(procedures, parameters, mainBehaviour));
+            //Hash-cons the behaviours, so structurally identical subtrees are the same instance
+            BehaviourInterner.internAll(procedures);
+            fixedMap.put(processName, new ProcessTerm(procedures, parameters, BehaviourInterner.intern(mainBehaviour)));
         });
 
         return new Network(fixedMap);
@@ -53,10 +53,10 @@ public class SpawnRepair implements TreeVisitor<Behaviour, Behaviour> {
                 if (!madeSpawnedProcedures) {
                     //Add the procedures the child needs, and rename them to distinguish them from their parent's
                     ProcessTerm term = terms.get(sp.variable);
-                    term.procedures.forEach((name, original) -> {
+                    term.procedures().forEach((name, original) -> {
                         Behaviour fixed = childRepair.Visit(original);
                         spawnedProcedures.putIfAbsent(name + "_" + sp.variable, fixed);
-                        spawnedProcedureParameters.putIfAbsent(name+"_"+sp.variable, term.parameters.get(name));
+                        spawnedProcedureParameters.putIfAbsent(name+"_"+sp.variable, term.procedures().parameters(name));
                     });
                 }
                 Behaviour childBehaviour = childRepair.Visit(sp.processBehaviour);
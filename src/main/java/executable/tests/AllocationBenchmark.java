@@ -0,0 +1,83 @@
+package executable.tests;
+
+import extraction.Extraction;
+import extraction.Strategy;
+import extraction.network.Behaviour;
+import extraction.network.Network;
+import extraction.network.ProcessTerm;
+import parsing.Parser;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * Measures the memory allocated by extracting networks, and by looking at the main behaviour of processes.
+ * Uses the allocation counter of the current thread, so extraction runs on a single thread.
+ */
+public class AllocationBenchmark {
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 20;
+    private static final int LOOKUPS = 1_000_000;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static final String twoBuyers =
+            "buyer1 { def X{ shop!<book>; shop?; buyer2!<quote>; buyer2?; X } main { X } } | " +
+            "buyer2 { def Y{ buyer1?; buyer1!<half>; shop&{ ok: Y, ko: stop } } main { Y } } | " +
+            "shop { def Z{ buyer1?; buyer1!<price>; if available then buyer2+ok; Z else buyer2+ko; stop } main { Z } }";
+
+    public static void main(String[] args){
+        var networks = new LinkedHashMap<String, String>();
+        networks.put("twoBuyers", twoBuyers);
+        networks.put("hierarchy", SpawnBenchmark.hierarchy);
+        networks.put("spawnPairs4", SpawnBenchmark.spawnPairs(4));
+        networks.put("spawnWorkers16", SpawnBenchmark.spawnWorkers(16));
+
+        System.out.println(String.join(Benchmarking.SEPARATOR, "network", "KB/extraction", "bytes/runtimeMain()", "bytes/rawMain()"));
+        networks.forEach((name, network) -> {
+            for (int i = 0; i < WARMUP_RUNS; i++)
+                extract(network);
+            long allocated = allocatedBytes();
+            for (int i = 0; i < MEASURED_RUNS; i++)
+                extract(network);
+            double extraction = (allocatedBytes() - allocated) / 1024.0 / MEASURED_RUNS;
+
+            System.out.println(String.join(Benchmarking.SEPARATOR, name, "%.1f".formatted(extraction),
+                    "%.2f".formatted(lookupBytes(network, true)), "%.2f".formatted(lookupBytes(network, false))));
+        });
+    }
+
+    private static void extract(String network){
+        Extraction.newExtractor().setStrategy(Strategy.InteractionsFirst).extract(network, Set.of());
+    }
+
+    /**
+     * Inspects the main behaviour of every process of the network, as the strategies do when ordering processes.
+     * @return The number of bytes allocated per inspected process.
+     */
+    private static double lookupBytes(String networkString, boolean runtime){
+        Network network = Parser.stringToNetwork(networkString);
+        network.unfold();
+        var terms = network.processes.values().toArray(new ProcessTerm[0]);
+        int interactions = 0;
+        long allocated = 0;
+        for (int run = 0; run < 2; run++){      //The first run is warmup
+            allocated = allocatedBytes();
+            for (int i = 0; i < LOOKUPS; i++){
+                var term = terms[i % terms.length];
+                if ((runtime ? term.runtimeMain() : term.rawMain()) instanceof Behaviour.Interaction)
+                    interactions++;
+            }
+            allocated = allocatedBytes() - allocated;
+        }
+        if (interactions < 0)
+            System.out.println();   //Keeps the lookups from being optimised away
+        return (double) allocated / LOOKUPS;
+    }
+
+    private static long allocatedBytes(){
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
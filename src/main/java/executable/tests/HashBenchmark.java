@@ -0,0 +1,67 @@
+package executable.tests;
+
+import extraction.network.Network;
+import extraction.network.ProcessTerm;
+import parsing.Parser;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Measures the time to hash networks, as GraphBuilder does when fingerprinting a node. ProcessTerms keep their
+ * hash, so the first hash of a term is calculated, and later hashes of the term or its copies are looked up.
+ * Both are measured on copies of the unfolded network that have not been hashed before.
+ */
+public class HashBenchmark {
+    private static final int COPIES = 1000;
+    private static final int RUNS = 200;           //The fastest run is reported
+
+    public static void main(String[] args){
+        var networks = new LinkedHashMap<String, String>();
+        networks.put("twoBuyers", AllocationBenchmark.twoBuyers);
+        networks.put("hierarchy", SpawnBenchmark.hierarchy);
+        networks.put("spawnPairs8", SpawnBenchmark.spawnPairs(8));
+        networks.put("spawnWorkers16", SpawnBenchmark.spawnWorkers(16));
+
+        System.out.println(String.join(Benchmarking.SEPARATOR, "network", "processes",
+                "ns/process(first hash)", "ns/process(cached hash)"));
+        networks.forEach((name, networkString) -> {
+            Network network = Parser.stringToNetwork(networkString);
+            network.unfold();
+            int processes = network.processes.size();
+            double first = Double.MAX_VALUE, cached = Double.MAX_VALUE;
+            var firstHashes = new int[COPIES];
+            var cachedHashes = new int[COPIES];
+            for (int run = 0; run < RUNS; run++){
+                var copies = new Network[COPIES];
+                for (int i = 0; i < COPIES; i++)
+                    copies[i] = network.copy();
+                long start = System.nanoTime();
+                hashAll(copies, firstHashes);
+                long middle = System.nanoTime();
+                hashAll(copies, cachedHashes);
+                long end = System.nanoTime();
+                if (!Arrays.equals(firstHashes, cachedHashes))
+                    throw new IllegalStateException("Hashing the same networks twice gave different hashes");
+                first = Math.min(first, (double) (middle - start) / COPIES / processes);
+                cached = Math.min(cached, (double) (end - middle) / COPIES / processes);
+            }
+            System.out.println(String.join(Benchmarking.SEPARATOR, name, String.valueOf(processes),
+                    "%.2f".formatted(first), "%.2f".formatted(cached)));
+        });
+    }
+
+    /**
+     * Hashes the networks, and the terms that are not terminated, like NetworkFingerprint does.
+     * @param hashes Is set to the combined hash of each network.
+     */
+    private static void hashAll(Network[] networks, int[] hashes){
+        for (int i = 0; i < networks.length; i++){
+            int hash = networks[i].hashCode();
+            for (ProcessTerm term : networks[i].processes.values())
+                if (!term.isTerminated())
+                    hash ^= term.hashCode() * 29;
+            hashes[i] = hash;
+        }
+    }
+}
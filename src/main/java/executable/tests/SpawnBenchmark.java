@@ -0,0 +1,98 @@
+package executable.tests;
+
+import extraction.Extraction;
+import extraction.Strategy;
+import extraction.network.UsedVariables;
+
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Times the extraction of networks that spawn many processes with identical process terms,
+ * where closing loops in the SEG requires finding a renaming of the spawned processes.
+ */
+public class SpawnBenchmark {
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 10;
+
+    static final String hierarchy =
+            "CEO { def w(man){ man?; man!<solution>; stop } " +
+                    "def m(dir, this){ dir?; spawn worker1 with w(this) continue spawn worker2 with w(this) continue worker1!<problem>; worker2!<problem>; worker1?; worker2?; dir!<solutions>; stop } " +
+                    "def d(p, this){ p?; spawn manager1 with m(this, manager1) continue spawn manager2 with m(this, manager2) continue manager1!<task1>; manager2!<task2>; manager1?; manager2?; p!<progress>; stop } " +
+                    "main { spawn director1 with d(CEO, director1) continue spawn director2 with d(CEO, director2) continue director1!<direction>; director2!<direction>; director1?; director2?; stop } }";
+
+    /**
+     * A process that repeatedly spawns pairs of processes and introduces each pair to each other.
+     * The pairs of one round are stopped in the next round, so when the SEG loops, the live pairs
+     * have other names than the last time. All first and second processes of the pairs have identical
+     * process terms, and are only told apart by who they are introduced to.
+     */
+    static String spawnPairs(int pairs){
+        var spawns = new StringBuilder();
+        var introductions = new StringBuilder();
+        var stops = new StringBuilder();
+        var parameters = new StringJoiner(",");
+        var arguments = new StringJoiner(",");
+        for (int i = 0; i < pairs; i++){
+            spawns.append("spawn a%d with p?q; A(q) continue spawn b%d with p?q; B(q) continue ".formatted(i, i));
+            introductions.append("a%d<->b%d; ".formatted(i, i));
+            stops.append("oldA%d!<done>; oldB%d!<done>; ".formatted(i, i));
+            parameters.add("oldA%d,oldB%d".formatted(i, i));
+            arguments.add("a%d,b%d".formatted(i, i));
+        }
+        return ("p { def A(q){ q!<m>; q?; p?; stop } def B(q){ q?; q!<m>; p?; stop } " +
+                "def X(%1$s){ %2$s%3$s%4$sX(%5$s) } main { %2$s%3$sX(%5$s) } }")
+                .formatted(parameters, spawns, introductions, stops, arguments);
+    }
+
+    /**
+     * A process that repeatedly spawns workers, sends each a task, and waits for the results.
+     */
+    static String spawnWorkers(int workers){
+        var spawns = new StringBuilder();
+        var tasks = new StringBuilder();
+        var results = new StringBuilder();
+        for (int i = 0; i < workers; i++){
+            spawns.append("spawn w%d with W(p) continue ".formatted(i));
+            tasks.append("w%d!<task>; ".formatted(i));
+            results.append("w%d?; ".formatted(i));
+        }
+        return "p { def W(boss){ boss?; boss!<result>; stop } def X{ %s%s%sX } main { X } }".formatted(spawns, tasks, results);
+    }
+
+    public static void main(String[] args){
+        var networks = new LinkedHashMap<String, String>();
+        networks.put("hierarchy", hierarchy);
+        for (int size : new int[]{2, 4, 6, 8})
+            networks.put("spawnPairs" + size, spawnPairs(size));
+        for (int size : new int[]{4, 8, 16})
+            networks.put("spawnWorkers" + size, spawnWorkers(size));
+
+        System.out.println(String.join(Benchmarking.SEPARATOR,
+                "network", "time(msec)", "nodes", "mappingAttempts", "falsePositives",
+                "usedVariableLookups", "behavioursSummarised", "result"));
+        networks.forEach((name, network) -> {
+            Extraction.ExtractionResult result = null;
+            for (int i = 0; i < WARMUP_RUNS; i++)
+                result = extract(network);
+            long lookups = UsedVariables.lookups(), summarised = UsedVariables.behavioursSummarised();
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_RUNS; i++)
+                result = extract(network);
+            double milliseconds = (System.nanoTime() - start) / 1e6 / MEASURED_RUNS;
+
+            var data = result.extractionInfo.get(0);
+            System.out.println(String.join(Benchmarking.SEPARATOR, name, "%.2f".formatted(milliseconds),
+                    String.valueOf(data.nodeCount()), String.valueOf(data.statistics().mappingAttempts),
+                    String.valueOf(data.statistics().falsePositives),
+                    String.valueOf((UsedVariables.lookups() - lookups) / MEASURED_RUNS),
+                    String.valueOf((UsedVariables.behavioursSummarised() - summarised) / MEASURED_RUNS),
+                    String.valueOf(data.result())));
+        });
+    }
+
+    private static Extraction.ExtractionResult extract(String network){
+        return Extraction.newExtractor().setStrategy(Strategy.InteractionsFirst).extract(network, Set.of());
+    }
+}
@@ -1,6 +1,6 @@
 package extraction;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -9,48 +9,76 @@ import java.util.List;
  * It is specialized to keep track of which processes are familiar with each other. If they are not familiar, then
  * they are not allowed to communicate.
  *
- * Each process gets an integer ID between 0 and n-1. The variable "matrix" stores a list of booleans. Each list in
- * matrix has the same number of entries as its index. This means that the lists stores relationships for all processes
- * with an ID lower that the index of the list. If for example you want to look up if processes with ID 5 and 7 know
- * each other, you would get the list at index 7 from matrix, then look and index 5 on that list.
+ * Each process gets an integer ID between 0 and n-1. The variable "rows" stores a bitset for each process. The row
+ * of a process has one bit for each process with an ID lower than or equal to its own. If for example you want to
+ * look up if processes with ID 5 and 7 know each other, you would get the row at index 7, then look at bit 5 of it.
+ *
+ * Copies share their rows and index map, and only copy them when they are modified. Introducing two processes
+ * copies only the row being changed, so copying a network that rarely introduces processes is cheap.
  */
 public class AdjacencyMatrix {
-    public final ArrayList<ArrayList<Boolean>> matrix;
-    private final HashMap<String, Integer> indexMap;
+    private long[][] rows;
+    private HashMap<String, Integer> indexMap;
+    private int size;                               //Number of processes
+    //Copy-on-write. When shared, rows and indexMap may be referenced by other matrices, and must be copied before
+    //being modified. After copying rows, only the rows in ownedRows have been copied, and can be modified.
+    private boolean shared = false;
+    private long[] ownedRows;
 
     /**
      * Creates a new undirected adjacency matrix where all processes know each other.
      * @param processNames List of initial processes, which all know of each other
      */
     public AdjacencyMatrix(List<String> processNames){
-        int n = processNames.size();
-        matrix = new ArrayList<>(n);
-        for (int i = 1; i <= n; i++){
-            var column = new ArrayList<Boolean>(i); //1 entry for process 0, n entries for process n-1
-            for (int j = 0; j < i; j++){            //once per entry
-                column.add(Boolean.TRUE);
-            }
-            matrix.add(column);
+        size = processNames.size();
+        rows = new long[Math.max(size, 4)][];
+        for (int i = 0; i < size; i++){
+            rows[i] = new long[(i >>> 6) + 1];      //1 bit for process 0, n bits for process n-1
+            Arrays.fill(rows[i], -1L);
+            rows[i][i >>> 6] = -1L >>> (63 - (i & 63));
         }
-        indexMap = new HashMap<>(n);                //Map process names to an ID
-        for (int i = 0; i < n; i++){
+        ownedRows = new long[(rows.length >>> 6) + 1];
+        Arrays.fill(ownedRows, -1L);
+        indexMap = new HashMap<>(size);             //Map process names to an ID
+        for (int i = 0; i < size; i++){
             indexMap.put(processNames.get(i), i);
         }
     }
 
     /**
-     * Constructor that copies the adjacency matrix, and index map from the parameters.
+     * Constructor that shares the rows and index map of the other matrix.
      * Used for making copies.
      */
-    private AdjacencyMatrix(ArrayList<ArrayList<Boolean>> prevMatrix, HashMap<String, Integer> prevIndex){
-        //Makes a deep copy of the matrix
-        matrix = new ArrayList<>(prevMatrix.size());
-        for (ArrayList<Boolean> row : prevMatrix){
-            matrix.add(new ArrayList<>(row));
-        }
+    private AdjacencyMatrix(AdjacencyMatrix other){
+        rows = other.rows;
+        indexMap = other.indexMap;
+        size = other.size;
+        shared = true;
+    }
 
-        //Indexes do not need a deep copy, since the entries are permanent once added.
-        indexMap = new HashMap<>(prevIndex);
+    /**
+     * Copies the rows array and index map, if they are shared with another matrix.
+     * The rows themselves are still shared until they are modified.
+     */
+    private void unshare(){
+        if (!shared)
+            return;
+        rows = rows.clone();
+        indexMap = new HashMap<>(indexMap);     //Indexes do not need a deep copy, since the entries are permanent once added.
+        ownedRows = new long[(rows.length >>> 6) + 1];
+        shared = false;
+    }
+
+    /**
+     * @return The row of the process with the provided ID, such that it can be modified.
+     */
+    private long[] writableRow(int id){
+        unshare();
+        if ((ownedRows[id >>> 6] & 1L << id) == 0){
+            rows[id] = rows[id].clone();
+            ownedRows[id >>> 6] |= 1L << id;
+        }
+        return rows[id];
     }
 
     /**
@@ -59,17 +87,19 @@ public class AdjacencyMatrix {
      * @param child The newly spawned process
      */
     public void spawn(String parent, String child){
-        int n = indexMap.size();                    //Number of existing processes, not counting child
+        unshare();
+        int n = size++;                             //Number of existing processes, not counting child
         indexMap.put(child, n);                     //Give process n+1 id #n, since they are 0-indexed
-        var newcolumn = new ArrayList<Boolean>(n+1);  //There are n+1 processes in the network (including the new process
-        for (int i = 0; i < n+1; i++){
-            newcolumn.add(Boolean.FALSE);           //New process does not know anyone
+        if (n == rows.length){
+            rows = Arrays.copyOf(rows, n * 2);
+            ownedRows = Arrays.copyOf(ownedRows, (rows.length >>> 6) + 1);
         }
-        newcolumn.set(n, Boolean.TRUE);             //Process knows itself
+        var row = new long[(n >>> 6) + 1];          //New process does not know anyone
+        row[n >>> 6] = 1L << n;                     //Process knows itself
                                                     //Arguably, if it is checked if a process knows itself, an error should be thrown.
-        matrix.add(newcolumn);
+        rows[n] = row;
+        ownedRows[n >>> 6] |= 1L << n;
         introduce(parent, child);                   //Parents and child know each other
-
     }
 
     /**
@@ -85,7 +115,8 @@ public class AdjacencyMatrix {
             higher = lower;
             lower = tmp;
         }
-        matrix.get(higher).set(lower, Boolean.TRUE);
+        if (!bit(higher, lower))
+            writableRow(higher)[lower >>> 6] |= 1L << lower;
     }
 
     /**
@@ -99,14 +130,19 @@ public class AdjacencyMatrix {
             higher = lower;
             lower = tmp;
         }
-        return matrix.get(higher).get(lower);
+        return bit(higher, lower);
+    }
+
+    private boolean bit(int row, int column){
+        return (rows[row][column >>> 6] & 1L << column) != 0;
     }
 
     /**
-     * Create a copy of this matrix
+     * Create a copy of this matrix. The copy shares its data with this matrix until either of them is modified.
      */
     public AdjacencyMatrix copy(){
-        return new AdjacencyMatrix(matrix, indexMap);
+        shared = true;              //This matrix must also copy the shared data before modifying it
+        return new AdjacencyMatrix(this);
     }
 
     @Override
@@ -114,11 +150,11 @@ public class AdjacencyMatrix {
         if (o == this)
             return true;
         if (!(o instanceof AdjacencyMatrix other) ||    //Ensure both adj-matrices
-                matrix.size() != other.matrix.size() || //Ensure matrices can be compared
+                size != other.size ||                   //Ensure matrices can be compared
                 !indexMap.equals(other.indexMap))       //Ensure the processes in the matrix are the same
             return false;
-        for (int i = 0; i < matrix.size(); i++){        //Compare element wise
-            if (!matrix.get(i).equals(other.matrix.get(i)))
+        for (int i = 0; i < size; i++){                 //Compare row wise
+            if (rows[i] != other.rows[i] && !Arrays.equals(rows[i], other.rows[i]))
                 return false;
         }
         return true;
@@ -126,9 +162,9 @@ public class AdjacencyMatrix {
 
     @Override
     public int hashCode(){
-        //It should create the hash from the hashes of its elements, so this should suffice
-        return matrix.hashCode() * 31 + indexMap.hashCode();
+        int hash = indexMap.hashCode();
+        for (int i = 0; i < size; i++)
+            hash = hash * 31 + Arrays.hashCode(rows[i]);
+        return hash;
     }
-
-
 }
@@ -0,0 +1,429 @@
+package extraction;
+
+import extraction.network.Network;
+import extraction.network.ProcessTerm;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+
+/**
+ * Searches for a renaming of the processes of one network into the processes of another, which shows
+ * the networks behave the same, such that a loop can be formed between their nodes in the SEG.<br>
+ * The processes are coloured by their process terms, since processes can only be renamed to processes with
+ * identical terms. Processes with the same name and term in both networks keep their name, which makes for
+ * fewer parameters in the final choreography, so each of them gets a colour of its own. The colours are then
+ * refined by the colours of the processes the variables used by each process are bound to, in rounds, until no
+ * colour is split (colour refinement). Any valid renaming maps each process to a process of the same colour.<br>
+ * If no renaming keeps the names, a process that keeps its name may still swap names with the processes of the
+ * same term that are renamed, as in the search this replaced, so those processes share a colour instead.<br>
+ * If the colours do not already determine the renaming, processes of the same colour are paired up, preferring
+ * to keep their names. If that pairing is not valid, a process is given a colour of its own, together with each
+ * possible target in turn, and the colours are refined again, until a valid renaming is found, or it is shown
+ * that none exists.<br>
+ * Processes with identical terms are interchangeable, so a network is equivalent to every network obtained by
+ * permuting them (its orbit). findInOrbit() also permutes the processes that keep their names if no renaming is
+ * found otherwise, so states that only differ by which of the interchangeable processes has advanced are
+ * recognised as the same. The renaming is then restricted by a predicate on the pairs of processes, such as the
+ * markings of the nodes, and the first renaming in the orbit that satisfies it is found.
+ */
+class BijectiveMapping {
+    private final String[] fromNames, toNames;                  //The non-terminated processes of each network
+    private final ProcessTerm[] fromTerms, toTerms;
+    private final HashMap<String, Integer> fromIndex = new HashMap<>(), toIndex = new HashMap<>();
+    private final int[] fromClass, toClass;                     //Index of the process term of each process
+    private final BiPredicate<String, String> allowed;          //If a process may be renamed to another
+    private int classCount = 0;
+    private int[][] fromTargets, toTargets;                     //Variable bindings the colours are refined by
+
+    private BijectiveMapping(int size, BiPredicate<String, String> allowed){
+        this.allowed = allowed;
+        fromNames = new String[size];
+        toNames = new String[size];
+        fromTerms = new ProcessTerm[size];
+        toTerms = new ProcessTerm[size];
+        fromClass = new int[size];
+        toClass = new int[size];
+    }
+
+    /**
+     * Calculates a mapping from process names in fromNetwork to process names in toNetwork, such that:<br>
+     * 1. The mapping is bijective.<br>
+     * 2. The processes have identical process terms.<br>
+     * 3. If a process gets mapped to a process of a different name, then any variables in toNetwork that refers
+     * to the process it maps to, refers to the remapped process in fromNetwork.<br>
+     * Processes with the same name and term in both networks keep their name, unless there are processes with
+     * that term which are renamed, and the mapping is only found if they swap names.
+     * Terminated processes are ignored. The returned map only contains mappings between processes of different
+     * names. Processes not in the returned map maps to themselves.
+     * @return A mapping of process names, representing a renaming that allows a loop to close,
+     * or null if no such mapping exists.
+     */
+    static Map<String, String> find(Network fromNetwork, Network toNetwork){
+        return find(fromNetwork, toNetwork, (from, to) -> true, false);
+    }
+
+    /**
+     * Same as find(Network, Network), except processes with the same name and term in both networks may be
+     * renamed to each other, if there is no mapping where they keep their names, and the mapping only maps
+     * processes to processes it is allowed to.
+     * @param allowed Tests if a process in fromNetwork may be mapped to a process in toNetwork.
+     */
+    static Map<String, String> findInOrbit(Network fromNetwork, Network toNetwork, BiPredicate<String, String> allowed){
+        return find(fromNetwork, toNetwork, allowed, true);
+    }
+
+    private static Map<String, String> find(Network fromNetwork, Network toNetwork,
+                                            BiPredicate<String, String> allowed, boolean orbit){
+        int size = countNonTerminated(fromNetwork);
+        if (size != countNonTerminated(toNetwork))
+            return null;    //There can be no bijective mapping between a different number of processes
+        var mapping = new BijectiveMapping(size, allowed);
+        if (!mapping.colourByTerms(fromNetwork, toNetwork))
+            return null;
+        int[] fromColours = mapping.fromClass.clone(), toColours = mapping.toClass.clone();
+        boolean keptNames = mapping.keepNames(fromColours, toColours);
+        int[] swapFrom = fromColours.clone(), swapTo = toColours.clone();
+
+        //Most loops keep the names of all processes, so try pairing up processes before refining the colours
+        int[] pairing = mapping.pair(fromColours, toColours);
+        if (pairing != null && mapping.isValid(pairing))
+            return mapping.toMap(pairing);
+
+        mapping.prepareRefinement();
+        var renaming = mapping.search(fromColours, toColours);
+        if (renaming == null && keptNames && mapping.allowSwaps(swapFrom, swapTo))
+            renaming = mapping.search(swapFrom, swapTo);
+        //Interchangeable processes may have to swap names, so search the orbit of the network as well
+        if (renaming == null && orbit && keptNames)
+            renaming = mapping.search(mapping.fromClass.clone(), mapping.toClass.clone());
+        return renaming;
+    }
+
+    private static int countNonTerminated(Network network){
+        int count = 0;
+        for (var term : network.processes.values()){
+            if (!term.isTerminated())
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Colours the processes by their process terms.
+     * @return false if the networks do not have the same number of processes with each term.
+     */
+    private boolean colourByTerms(Network fromNetwork, Network toNetwork){
+        var classes = new HashMap<ProcessTerm, Integer>();
+        var counts = new ArrayList<Integer>();
+        int i = 0;
+        for (var entry : fromNetwork.processes.entrySet()){
+            if (entry.getValue().isTerminated())
+                continue;
+            fromNames[i] = entry.getKey();
+            fromTerms[i] = entry.getValue();
+            fromIndex.put(entry.getKey(), i);
+            Integer termClass = classes.get(entry.getValue());
+            if (termClass == null){
+                termClass = classCount++;
+                classes.put(entry.getValue(), termClass);
+                counts.add(0);
+            }
+            fromClass[i++] = termClass;
+            counts.set(termClass, counts.get(termClass) + 1);
+        }
+        i = 0;
+        for (var entry : toNetwork.processes.entrySet()){
+            if (entry.getValue().isTerminated())
+                continue;
+            Integer termClass = classes.get(entry.getValue());
+            if (termClass == null || counts.get(termClass) == 0)
+                return false;
+            counts.set(termClass, counts.get(termClass) - 1);
+            toNames[i] = entry.getKey();
+            toTerms[i] = entry.getValue();
+            toIndex.put(entry.getKey(), i);
+            toClass[i++] = termClass;
+        }
+        return true;
+    }
+
+    /**
+     * Gives processes with the same name and term in both networks a colour of their own,
+     * if they are allowed to keep their name.
+     * @return true if any process was given a colour of its own.
+     */
+    private boolean keepNames(int[] fromColours, int[] toColours){
+        int colour = classCount;
+        for (int f = 0; f < fromColours.length; f++){
+            Integer t = toIndex.get(fromNames[f]);
+            if (t != null && toClass[t] == fromClass[f] && allowed.test(fromNames[f], fromNames[f])){
+                fromColours[f] = toColours[t] = colour++;
+            }
+        }
+        return colour != classCount;
+    }
+
+    /**
+     * Gives the processes that keep their name the colour of their term again, if some processes of that term
+     * are renamed, such that they may swap names with them.
+     * @return true if any process that kept its name may now be renamed.
+     */
+    private boolean allowSwaps(int[] fromColours, int[] toColours){
+        var renamedTerms = new boolean[classCount];
+        for (int f = 0; f < fromColours.length; f++){
+            if (fromColours[f] < classCount)
+                renamedTerms[fromClass[f]] = true;
+        }
+        boolean swappable = false;
+        for (int f = 0; f < fromColours.length; f++){
+            if (fromColours[f] >= classCount && renamedTerms[fromClass[f]]){
+                fromColours[f] = toColours[toIndex.get(fromNames[f])] = fromClass[f];
+                swappable = true;
+            }
+        }
+        return swappable;
+    }
+
+    /**
+     * The variables used by a process in toNetwork. Identical terms may use different variables, as procedure
+     * parameters are considered used variables.
+     */
+    private Set<String> usedVariables(int t){
+        return toTerms[t].usedVariables();
+    }
+
+    /**
+     * Pairs up processes of the same colour, keeping the names of processes where possible.
+     * @return Array from indices of processes in fromNetwork to indices in toNetwork,
+     * or null if the colours are not evenly distributed, or the processes of a colour could not all be paired
+     * with processes they are allowed to be mapped to.
+     */
+    private int[] pair(int[] fromColours, int[] toColours){
+        int size = fromColours.length;
+        int[] pairing = new int[size];
+        boolean[] paired = new boolean[size];
+        Arrays.fill(pairing, -1);
+        for (int f = 0; f < size; f++){
+            Integer t = toIndex.get(fromNames[f]);
+            if (t != null && toColours[t] == fromColours[f] && allowed.test(fromNames[f], toNames[t])){
+                pairing[f] = t;
+                paired[t] = true;
+            }
+        }
+        //Pair the remaining processes in order, by the next unpaired process of each colour it is allowed to
+        var nextOfColour = new HashMap<Integer, Integer>();
+        for (int f = 0; f < size; f++){
+            if (pairing[f] != -1)
+                continue;
+            int first = nextOfColour.getOrDefault(fromColours[f], 0);
+            while (first < size && (paired[first] || toColours[first] != fromColours[f]))
+                first++;
+            nextOfColour.put(fromColours[f], first);
+            int t = first;
+            while (t < size && (paired[t] || toColours[t] != fromColours[f] || !allowed.test(fromNames[f], toNames[t])))
+                t++;
+            if (t == size)
+                return null;
+            pairing[f] = t;
+            paired[t] = true;
+        }
+        return pairing;
+    }
+
+    /**
+     * Checks that the variables used by the processes in toNetwork are bound to the renamed processes
+     * of the variables of the processes in fromNetwork. The processes are assumed to have identical terms.
+     * (The process in fromNetwork may have strictly more variables, but the additional variables can be ignored,
+     * since they will be assigned before being used)
+     */
+    private boolean isValid(int[] pairing){
+        for (int f = 0; f < pairing.length; f++){
+            int t = pairing[f];
+            Map<String, String> fromVariables = fromTerms[f].getVariables();
+            for (var variable : toTerms[t].getVariables().entrySet()){
+                String fromValue = fromVariables.get(variable.getKey());
+                Integer renamed = fromIndex.get(fromValue);
+                String mappedValue = renamed == null ? fromValue : toNames[pairing[renamed]];
+                //Variables that are not used in the loop do not affect correctness
+                if (!mappedValue.equals(variable.getValue()) && usedVariables(t).contains(variable.getKey()))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<String, String> toMap(int[] pairing){
+        var map = new HashMap<String, String>();
+        for (int f = 0; f < pairing.length; f++){
+            if (!fromNames[f].equals(toNames[pairing[f]]))
+                map.put(fromNames[f], toNames[pairing[f]]);
+        }
+        return map;
+    }
+
+    /* ============================
+        Colour refinement
+       ============================ */
+
+    /**
+     * Finds the bindings each process is refined by. A renaming is checked against the variables bound and used
+     * by the processes in toNetwork, so if every process in toNetwork with the same term binds and uses the same
+     * variables, the processes with that term are refined by the bindings of those variables. Otherwise, they
+     * are only paired up by their terms, and the bindings are checked once they are paired.
+     * Bindings to processes that are not renamed are encoded as negative numbers unique to the process name,
+     * and bindings to renamed processes as their index.
+     */
+    private void prepareRefinement(){
+        var relevantVariables = new ArrayList<List<String>>(Collections.nCopies(classCount, null));
+        var uniform = new boolean[classCount];
+        Arrays.fill(uniform, true);
+        for (int t = 0; t < toTerms.length; t++){
+            int termClass = toClass[t];
+            if (!uniform[termClass])
+                continue;
+            var used = usedVariables(t);
+            var bound = new ArrayList<String>();
+            for (var variable : toTerms[t].getVariables().keySet()){
+                if (used.contains(variable))
+                    bound.add(variable);
+            }
+            Collections.sort(bound);
+            if (relevantVariables.get(termClass) == null)
+                relevantVariables.set(termClass, bound);
+            else if (!relevantVariables.get(termClass).equals(bound))
+                uniform[termClass] = false;
+        }
+        //A variable bound to a process that has terminated in fromNetwork matches the process of the same name in
+        //toNetwork, which is not renamed to it. Such bindings cannot be compared by colour.
+        for (int f = 0; f < fromTerms.length; f++){
+            if (!uniform[fromClass[f]])
+                continue;
+            var values = fromTerms[f].getVariables();
+            for (var variable : relevantVariables.get(fromClass[f])){
+                String value = values.get(variable);
+                if (!fromIndex.containsKey(value) && toIndex.containsKey(value))
+                    uniform[fromClass[f]] = false;
+            }
+        }
+
+        var fixedNames = new HashMap<String, Integer>();
+        fromTargets = bindings(fromTerms, fromClass, fromIndex, relevantVariables, uniform, fixedNames);
+        toTargets = bindings(toTerms, toClass, toIndex, relevantVariables, uniform, fixedNames);
+    }
+
+    private static int[][] bindings(ProcessTerm[] terms, int[] classes, HashMap<String, Integer> index,
+                                    List<List<String>> relevantVariables, boolean[] uniform,
+                                    HashMap<String, Integer> fixedNames){
+        var targets = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++){
+            if (!uniform[classes[i]]){
+                targets[i] = new int[0];
+                continue;
+            }
+            var variables = relevantVariables.get(classes[i]);
+            var values = terms[i].getVariables();
+            targets[i] = new int[variables.size()];
+            for (int v = 0; v < variables.size(); v++){
+                String value = values.get(variables.get(v));
+                Integer target = index.get(value);
+                targets[i][v] = target != null ? target : -1 - fixedNames.computeIfAbsent(value, __ -> fixedNames.size());
+            }
+        }
+        return targets;
+    }
+
+    private record Signature(int[] values){
+        @Override
+        public boolean equals(Object other){
+            return other instanceof Signature signature && Arrays.equals(values, signature.values);
+        }
+        @Override
+        public int hashCode(){
+            return Arrays.hashCode(values);
+        }
+    }
+
+    /**
+     * Refines the colours until no colour is split any further. Afterwards, the colours are numbered from 0.
+     * @return The number of colours, or -1 if the colours are not evenly distributed between the networks.
+     */
+    private int refine(int[] fromColours, int[] toColours){
+        int colours = -1;
+        while (true){
+            var signatures = new HashMap<Signature, Integer>();
+            int[] newFrom = recolour(fromColours, fromTargets, signatures);
+            int[] newTo = recolour(toColours, toTargets, signatures);
+            if (!evenlyDistributed(newFrom, newTo, signatures.size()))
+                return -1;
+            System.arraycopy(newFrom, 0, fromColours, 0, newFrom.length);
+            System.arraycopy(newTo, 0, toColours, 0, newTo.length);
+            if (signatures.size() == colours)
+                return colours;     //Refining only splits colours, so the same number of colours means no change
+            colours = signatures.size();
+        }
+    }
+
+    private static int[] recolour(int[] colours, int[][] targets, HashMap<Signature, Integer> signatures){
+        int[] newColours = new int[colours.length];
+        for (int i = 0; i < colours.length; i++){
+            int[] values = new int[targets[i].length + 1];
+            values[0] = colours[i];
+            for (int v = 0; v < targets[i].length; v++){
+                int target = targets[i][v];
+                values[v + 1] = target < 0 ? target : colours[target];
+            }
+            newColours[i] = signatures.computeIfAbsent(new Signature(values), __ -> signatures.size());
+        }
+        return newColours;
+    }
+
+    private static boolean evenlyDistributed(int[] fromColours, int[] toColours, int colours){
+        int[] counts = new int[colours];
+        for (int colour : fromColours)
+            counts[colour]++;
+        for (int colour : toColours){
+            if (--counts[colour] < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Refines the colours, and searches for a valid renaming that respects them.
+     * @return The renaming, or null if there is none.
+     */
+    private Map<String, String> search(int[] fromColours, int[] toColours){
+        int colours = refine(fromColours, toColours);
+        if (colours == -1)
+            return null;
+        int[] pairing = pair(fromColours, toColours);
+        if (pairing != null && isValid(pairing))
+            return toMap(pairing);
+
+        //Give the first process that shares its colour a colour of its own, and try each possible target
+        int[] sizes = new int[colours];
+        for (int colour : fromColours)
+            sizes[colour]++;
+        int f = 0;
+        while (f < fromColours.length && sizes[fromColours[f]] == 1)
+            f++;
+        if (f == fromColours.length)
+            return null;    //The colours determine the renaming, and it is not valid
+        var candidates = new ArrayList<Integer>();
+        Integer sameName = toIndex.get(fromNames[f]);
+        if (sameName != null && toColours[sameName] == fromColours[f] && allowed.test(fromNames[f], fromNames[f]))
+            candidates.add(sameName);
+        for (int t = 0; t < toColours.length; t++){
+            if (toColours[t] == fromColours[f] && !candidates.contains(t) && allowed.test(fromNames[f], toNames[t]))
+                candidates.add(t);
+        }
+        for (int t : candidates){
+            int[] individualFrom = fromColours.clone(), individualTo = toColours.clone();
+            individualFrom[f] = individualTo[t] = colours;
+            var map = search(individualFrom, individualTo);
+            if (map != null)
+                return map;
+        }
+        return null;
+    }
+}
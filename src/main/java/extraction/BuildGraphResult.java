@@ -1,5 +1,6 @@
 package extraction;
 
 enum BuildGraphResult {
-    OK, BAD_LOOP, FAIL
+    OK, BAD_LOOP, FAIL,
+    TIMEOUT, BUDGET_EXCEEDED, CANCELLED     //Stopped before completion. See ExtractionBudget
 }
@@ -0,0 +1,117 @@
+package extraction;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The branches of conditionals taken on the way from the root of an SEG to a node.<br>
+ * Choice paths form a trie rooted at the path of the root node. Extending a path with the same branch
+ * always returns the same instance, so equal paths are identical, and can be used as keys in identity
+ * based maps. The branches are also packed as bits, such that comparing paths compares 64 branches at a time.<br>
+ * The string representation is "-" followed by "1" for each then branch, and "0" for each else branch.
+ */
+public final class ChoicePath {
+    private final ChoicePath parent;
+    private final int length;                       //Number of conditional branches in the path
+    private final long[] branches;                  //Bit i is set if branch i was a then branch
+    private volatile ChoicePath thenPath, elsePath; //Extensions of this path, created when first needed
+
+    private ChoicePath(ChoicePath parent, int length, long[] branches){
+        this.parent = parent;
+        this.length = length;
+        this.branches = branches;
+    }
+
+    /**
+     * @return The path of a root node, with no branches. Each SEG should have its own root path.
+     */
+    static ChoicePath root(){
+        return new ChoicePath(null, 0, new long[0]);
+    }
+
+    /**
+     * Returns this path extended with one more branch.
+     * @param thenBranch true for the then branch of a conditional, false for the else branch.
+     */
+    ChoicePath extend(boolean thenBranch){
+        ChoicePath extension = thenBranch ? thenPath : elsePath;
+        if (extension != null)
+            return extension;
+        synchronized (this){        //Speculative GraphBuilders may extend the same path from different threads
+            extension = thenBranch ? thenPath : elsePath;
+            if (extension == null){
+                long[] extended = Arrays.copyOf(branches, (length >>> 6) + 1);
+                if (thenBranch)
+                    extended[length >>> 6] |= 1L << (length & 63);
+                extension = new ChoicePath(this, length + 1, extended);
+                if (thenBranch)
+                    thenPath = extension;
+                else
+                    elsePath = extension;
+            }
+            return extension;
+        }
+    }
+
+    /**
+     * @return true if prefix is this path, or a path this path is an extension of.
+     */
+    boolean startsWith(ChoicePath prefix){
+        if (prefix == this)
+            return true;
+        if (prefix.length > length)
+            return false;
+        int fullWords = prefix.length >>> 6;
+        for (int i = 0; i < fullWords; i++){
+            if (branches[i] != prefix.branches[i])
+                return false;
+        }
+        int remaining = prefix.length & 63;
+        return remaining == 0 || ((branches[fullWords] ^ prefix.branches[fullWords]) & ((1L << remaining) - 1)) == 0;
+    }
+
+    /**
+     * @return The longest path both this and the other path starts with.
+     */
+    ChoicePath commonPrefix(ChoicePath other){
+        int shortest = Math.min(length, other.length);
+        int common = 0;
+        for (int i = 0; common < shortest; i++){
+            long difference = branches[i] ^ other.branches[i];
+            if (difference != 0){
+                common = Math.min(shortest, i * 64 + Long.numberOfTrailingZeros(difference));
+                break;
+            }
+            common = Math.min(shortest, common + 64);
+        }
+        ChoicePath prefix = this;
+        while (prefix.length > common)
+            prefix = prefix.parent;
+        return prefix;
+    }
+
+    /**
+     * Calls action on this path, and every extension of it that has been created.
+     */
+    void forEachExtension(Consumer<ChoicePath> action){
+        var stack = new ArrayDeque<ChoicePath>();
+        stack.push(this);
+        while (!stack.isEmpty()){
+            ChoicePath path = stack.pop();
+            action.accept(path);
+            if (path.elsePath != null)
+                stack.push(path.elsePath);
+            if (path.thenPath != null)
+                stack.push(path.thenPath);
+        }
+    }
+
+    @Override
+    public String toString(){
+        var builder = new StringBuilder(length + 1).append('-');
+        for (int i = 0; i < length; i++)
+            builder.append((branches[i >>> 6] & 1L << (i & 63)) != 0 ? '1' : '0');
+        return builder.toString();
+    }
+}
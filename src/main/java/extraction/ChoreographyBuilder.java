@@ -46,10 +46,52 @@ public class ChoreographyBuilder {
         return new Choreography(main, procedures);
     }
 
+    /**
+     * Builds the body of the choreography from the graph below node, which must be a tree.
+     * The bodies of the children of a node are built before the body of the node, using an explicit stack
+     * rather than recursion, such that the depth of the graph is only bounded by the heap.
+     */
     private ChoreographyBody buildChoreographyBody(Node node){
-        var edges = graph.outgoingEdgesOf(node);
+        record Visit(Node node, boolean childrenBuilt){}
+        var visits = new ArrayDeque<Visit>();
+        var bodies = new ArrayDeque<ChoreographyBody>();   //The bodies of the children being built
+        visits.push(new Visit(node, false));
+        while (!visits.isEmpty()){
+            Visit visit = visits.pop();
+            Label[] edges = outgoingEdges(visit.node());
+            if (!visit.childrenBuilt()){
+                //Build the children first, with the first edge on the top of the stack
+                visits.push(new Visit(visit.node(), true));
+                for (int i = edges.length - 1; i >= 0; i--)
+                    visits.push(new Visit(graph.getEdgeTarget(edges[i]), false));
+                continue;
+            }
+            //The bodies of the children are on the top of the stack, with the last child on top
+            var children = new ChoreographyBody[edges.length];
+            for (int i = edges.length - 1; i >= 0; i--)
+                children[i] = bodies.pop();
+            bodies.push(buildChoreographyBody(visit.node(), edges, children));
+        }
+        return bodies.pop();
+    }
+
+    /**
+     * @return The outgoing edges of the node, where the then edge of a conditional is first.
+     */
+    private Label[] outgoingEdges(Node node){
+        Label[] labels = graph.outgoingEdgesOf(node).toArray(new Label[0]);
+        if (labels.length == 2 && labels[0] instanceof Label.ConditionLabel.ElseLabel)
+            labels = new Label[]{labels[1], labels[0]}; //Ensure that thenLabel is first
+        return labels;
+    }
 
-        switch (edges.size()) {
+    /**
+     * Builds the body of a single node, given the bodies of the nodes its edges go to.
+     * @param edges The outgoing edges of the node, as returned by outgoingEdges().
+     * @param children The bodies of the targets of the edges, in the same order.
+     */
+    private ChoreographyBody buildChoreographyBody(Node node, Label[] edges, ChoreographyBody[] children){
+        switch (edges.length) {
             case 0: {
                 if (node instanceof ConcreteNode concreteNode)
                     return terminationOrException(concreteNode);
@@ -58,39 +100,30 @@ public class ChoreographyBuilder {
                 throw new IllegalStateException("Unexpected Node type: " + node.getClass().getName());
             }
             case 1: {
-                Label edge = edges.iterator().next();
-                Node edgeTarget = graph.getEdgeTarget(edge);
+                Label edge = edges[0];
                 if (edge instanceof Label.CommunicationLabel comm) {
-                    return new Communication(comm.sender, comm.receiver, comm.expression,
-                            buildChoreographyBody(edgeTarget));
+                    return new Communication(comm.sender, comm.receiver, comm.expression, children[0]);
                 }
                 if (edge instanceof Label.SelectionLabel select) {
-                    return new Selection(select.sender, select.receiver, select.expression,
-                            buildChoreographyBody(edgeTarget));
+                    return new Selection(select.sender, select.receiver, select.expression, children[0]);
                 }
                 if (edge instanceof Label.MulticomLabel multicom) {
-                    return new Multicom(multicom.communications,
-                            buildChoreographyBody(edgeTarget));
+                    return new Multicom(multicom.communications, children[0]);
                 }
                 if (edge instanceof Label.IntroductionLabel introduction) {
                     return new Introduction(introduction.introducer, introduction.leftProcess, introduction.rightProcess,
-                            buildChoreographyBody(edgeTarget));
+                            children[0]);
                 }
                 if (edge instanceof Label.SpawnLabel spawnLabel){
-                    return new Spawn(spawnLabel.parent, spawnLabel.child, buildChoreographyBody(edgeTarget));
+                    return new Spawn(spawnLabel.parent, spawnLabel.child, children[0]);
                 }
                 throw new IllegalStateException("Unexpected edge type: " + edge.getClass().getName());
             }
             case 2: {
-                Label[] labels = edges.toArray(new Label[2]);
-                if (labels[0] instanceof Label.ConditionLabel.ElseLabel)
-                    labels = new Label[]{labels[1], labels[0]}; //Ensure that thenLabel is first
-                if ( !( labels[0] instanceof Label.ConditionLabel.ThenLabel thenLabel &&
-                        labels[1] instanceof Label.ConditionLabel.ElseLabel elseLabel))
+                if ( !( edges[0] instanceof Label.ConditionLabel.ThenLabel thenLabel &&
+                        edges[1] instanceof Label.ConditionLabel.ElseLabel))
                     throw new IllegalStateException("Node has two outgoing edges, but their labels are not then, and else labels");
-                return new Condition(thenLabel.process, thenLabel.expression,
-                        buildChoreographyBody(graph.getEdgeTarget(thenLabel)),
-                        buildChoreographyBody(graph.getEdgeTarget(elseLabel)));
+                return new Condition(thenLabel.process, thenLabel.expression, children[0], children[1]);
             }
             default:
                 throw new IllegalStateException("Bad graph. A node has more than 2 outgoing edges.");
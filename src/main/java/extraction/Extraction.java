@@ -7,11 +7,12 @@ import extraction.network.utils.NetworkPurger;
 import extraction.network.utils.Splitter;
 import extraction.network.NetAnalyser;
 import org.jetbrains.annotations.NotNull;
-import org.jgrapht.Graphs;
 import org.jgrapht.graph.DirectedPseudograph;
 import parsing.Parser;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class is made for interfacing with the choreography extraction algorithm.
@@ -23,12 +24,37 @@ public class Extraction {
     boolean multicomEnable = true;
     boolean purge = true;
     boolean splitParallelNetworks = true;
+    boolean parallelConditionals = false;
+    List<Strategy> portfolio = List.of();
+    Duration portfolioTimeBudget = null;
+    ExtractionBudget budget = null;
 
     //Set options
     public Extraction setStrategy(Strategy extractionStrategy){this.extractionStrategy = extractionStrategy; return this;}
     public Extraction disableMulticom(){multicomEnable = false; return this;}
     public Extraction disablePurge(){purge = false; return this;}
     public Extraction sequentialExtraction(){splitParallelNetworks = false; return this;}
+    public Extraction parallelConditionals(){parallelConditionals = true; return this;}
+    public Extraction setBudget(ExtractionBudget budget){this.budget = budget; return this;}
+    /**
+     * Extracts with several strategies at once, and keeps the first successful extraction.
+     * The strategy set by setStrategy() is then not used.
+     */
+    public Extraction setPortfolio(Strategy... strategies){
+        portfolio = List.of(strategies);
+        portfolioTimeBudget = null;
+        return this;
+    }
+    /**
+     * Extracts with several strategies at once, and keeps the successful extraction with the smallest Symbolic
+     * Execution Graph among those completed within the time budget. If none succeeded within the budget, the
+     * first to succeed afterwards is kept. The strategy set by setStrategy() is then not used.
+     */
+    public Extraction setPortfolio(Duration timeBudget, Strategy... strategies){
+        portfolio = List.of(strategies);
+        portfolioTimeBudget = timeBudget;
+        return this;
+    }
 
     public static Extraction newExtractor(){return new Extraction();}
     private Extraction(){}
@@ -113,19 +139,28 @@ public class Extraction {
 
         List<Extracted> results = Collections.synchronizedList(new ArrayList<>(independentNetworks.size()));
 
+        ExtractionBudget.Meter meter = budget == null ? null : budget.start();
         independentNetworks.parallelStream().forEach(independentNetwork ->
-                results.add(performExtraction(independentNetwork, services)));
+                results.add(performExtraction(independentNetwork, services, meter)));
 
         return new ExtractionResult(results);
     }
-    record Extracted(Choreography chor, DirectedPseudograph<Node,Label> SEG,
+    record Extracted(Choreography chor, SEGStore SEG,
                      DirectedPseudograph<Node,Label> unrolled, int badLoops,
-                     BuildGraphResult result, Node rootNode){}
+                     BuildGraphResult result, Node rootNode, GraphStatistics statistics, Strategy strategy){}
 
-    public record Data(DirectedPseudograph<Node,Label> symbolicExecutionGraph,
+    public record Data(SEGStore graphStore,
                               DirectedPseudograph<Node,Label> unrolledGraph,
                               int badLoopCount, int nodeCount,
-                              BuildGraphResult result, Node rootNode){}
+                              BuildGraphResult result, Node rootNode, GraphStatistics statistics,
+                              Strategy strategy){
+        /**
+         * @return The SEG as a jgrapht graph, which is created the first time it is requested. Must not be modified.
+         */
+        public DirectedPseudograph<Node,Label> symbolicExecutionGraph(){
+            return graphStore.asGraph();
+        }
+    }
 
     /**
      * Container to hold the Program instance resulting from the extraction, as well as
@@ -135,10 +170,13 @@ public class Extraction {
      * of the input network. If all processes are interdependent, there will be only one Choreography.
      * If extraction fails, the Choreography will be null.
      * The list of data has one entry for each Choreography in the Program, and corresponds to the one of the same index.
-     * The data is a record storing the generated Symbolic Execution Graph (SEG), the unrolled SEG if SEG generation
-     * was fully completed (null otherwise), the result of building the SEG (OK, BAD_LOOP, FAIL),
+     * The data is a record storing the generated Symbolic Execution Graph (SEG), which symbolicExecutionGraph()
+     * returns as a jgrapht graph, the unrolled SEG if SEG generation
+     * was fully completed (null otherwise), the result of building the SEG (OK, BAD_LOOP, FAIL, or
+     * TIMEOUT, BUDGET_EXCEEDED, CANCELLED if it was stopped by the ExtractionBudget),
      * the number of bad loops attempted during SEG generation, the number of nodes in the final SEG,
-     * and the root node of both graphs (it is the same Node instance for both).
+     * the root node of both graphs (it is the same Node instance for both), counters collected
+     * while building the SEG, and the strategy used to build it.
      */
     public static class ExtractionResult {
         public final Program program;
@@ -151,7 +189,7 @@ public class Extraction {
             var statistics = new ArrayList<Program.GraphData>(extracted.size());
             extracted.forEach(result -> {
                 choreographies.add(result.chor);
-                statistics.add(new Program.GraphData(result.SEG.vertexSet().size(), result.badLoops));
+                statistics.add(new Program.GraphData(result.SEG.nodeCount(), result.badLoops));
             });
             program = new Program(choreographies, statistics);
 
@@ -159,7 +197,7 @@ public class Extraction {
             extractionInfo = new ArrayList<>(extracted.size());
             extracted.forEach(result ->
                     extractionInfo.add(
-                        new Data(result.SEG, result.unrolled, result.badLoops, result.SEG.vertexSet().size(), result.result, result.rootNode)
+                        new Data(result.SEG, result.unrolled, result.badLoops, result.SEG.nodeCount(), result.result, result.rootNode, result.statistics, result.strategy)
                     )
                 );
         }
@@ -176,29 +214,132 @@ public class Extraction {
     /**
      * Actually does the extraction for a network that has been checked.
      */
-    private Extracted performExtraction(Network network, Set<String> services){
-        var graphContainer = GraphBuilder.buildSEG(network, services, extractionStrategy);
+    private Extracted performExtraction(Network network, Set<String> services, ExtractionBudget.Meter meter){
+        if (!portfolio.isEmpty())
+            return performPortfolioExtraction(network, services, meter);
+        var graphContainer = GraphBuilder.buildSEG(network, services, extractionStrategy, parallelConditionals, meter);
+        return buildChoreography(graphContainer, extractionStrategy);
+    }
+
+    /**
+     * Builds the SEG of a network with each strategy of the portfolio in parallel, and extracts the
+     * choreography from the graph selected by the portfolio options. Graphs that are no longer needed
+     * are stopped early.
+     */
+    private Extracted performPortfolioExtraction(Network network, Set<String> services, ExtractionBudget.Meter meter){
+        //Each strategy can be stopped on its own, within the budget of the extraction
+        var meters = new ExtractionBudget.Meter[portfolio.size()];
+        var executor = Executors.newFixedThreadPool(portfolio.size(), runnable -> {
+            var thread = new Thread(runnable, "portfolio extraction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var completed = new ExecutorCompletionService<Integer>(executor);
+        var containers = new GraphBuilder.SEGContainer[portfolio.size()];
+        var futures = new ArrayList<Future<Integer>>(portfolio.size());
+        for (int i = 0; i < portfolio.size(); i++){
+            int index = i;
+            Network copy = network.copy();     //Each strategy gets its own network
+            meters[index] = meter == null ? new ExtractionBudget().start() : meter.fork();
+            futures.add(completed.submit(() -> {
+                containers[index] = GraphBuilder.buildSEG(copy, services, portfolio.get(index), parallelConditionals, meters[index]);
+                return index;
+            }));
+        }
+
+        long deadline = portfolioTimeBudget == null ? 0 : System.nanoTime() + portfolioTimeBudget.toNanos();
+        int chosen = -1;
+        try{
+            int remaining = portfolio.size();
+            while (remaining > 0){
+                long timeLeft = deadline - System.nanoTime();
+                Future<Integer> next;
+                if (portfolioTimeBudget == null || chosen == -1 && timeLeft <= 0)
+                    next = completed.take();        //Wait for the first successful graph
+                else if (timeLeft <= 0)
+                    break;                          //Out of time, and a successful graph has been found
+                else if ((next = completed.poll(timeLeft, TimeUnit.NANOSECONDS)) == null)
+                    continue;
+                remaining--;
+                int index;
+                try{
+                    index = next.get();
+                } catch (ExecutionException e){
+                    continue;                       //The strategy crashed, and did not succeed
+                }
+                if (containers[index].buildGraphResult() != BuildGraphResult.OK)
+                    continue;
+                //Keep the smallest graph, or the earliest strategy of the portfolio if they are equally small
+                if (chosen == -1 || nodeCount(containers[index]) < nodeCount(containers[chosen]) ||
+                        nodeCount(containers[index]) == nodeCount(containers[chosen]) && index < chosen)
+                    chosen = index;
+                if (portfolioTimeBudget == null)
+                    break;                          //Keep the first successful graph
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        } finally {
+            for (var strategyMeter : meters)
+                strategyMeter.cancel();             //Stop the graphs that are still being built
+            executor.shutdown();
+        }
+
+        if (chosen == -1){
+            //No strategy succeeded. Report the first strategy of the portfolio.
+            chosen = 0;
+            awaitStopped(futures.get(0));
+        }
+        return buildChoreography(containers[chosen], portfolio.get(chosen));
+    }
+
+    /**
+     * Waits for a graph that has been stopped to finish building. The wait is short, so it is not cut off
+     * if the thread is interrupted, as the graph is then reported as CANCELLED. The interrupt is kept.
+     */
+    private static void awaitStopped(Future<Integer> future){
+        boolean interrupted = false;
+        try{
+            while (true){
+                try{
+                    future.get();
+                    return;
+                } catch (InterruptedException e){
+                    interrupted = true;
+                } catch (ExecutionException e){
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
 
+    private static int nodeCount(GraphBuilder.SEGContainer container){
+        return container.graph().nodeCount();
+    }
+
+    /**
+     * Extracts the choreography from a built SEG.
+     */
+    private Extracted buildChoreography(GraphBuilder.SEGContainer graphContainer, Strategy strategy){
         Node rootNode = graphContainer.rootNode();
         BuildGraphResult result = graphContainer.buildGraphResult();
         int badLoopCount = graphContainer.badLoopCounter();
 
-        DirectedPseudograph<Node,Label> SEG;
+        SEGStore SEG = graphContainer.graph();
         DirectedPseudograph<Node, Label> unrolled;
         Choreography choreography;
 
         if (result != BuildGraphResult.OK){
-            SEG = graphContainer.graph();
             unrolled = null;
             choreography = null;
         }
         else{
-            SEG = new DirectedPseudograph<>(Label.class);
-            Graphs.addGraph(SEG, graphContainer.graph());//Shallow copy the graph
-            choreography = ChoreographyBuilder.buildChoreography(graphContainer.rootNode(), graphContainer.graph());
-            unrolled = graphContainer.graph();//The call to buildChoreography unrolls the original graph
+            unrolled = SEG.toGraph();
+            choreography = ChoreographyBuilder.buildChoreography(graphContainer.rootNode(), unrolled);//Unrolls the graph
         }
-        return new Extracted(choreography, SEG, unrolled, badLoopCount, result, rootNode);
+        return new Extracted(choreography, SEG, unrolled, badLoopCount, result, rootNode, graphContainer.statistics(), strategy);
     }
 
     private Program extractChoreography(String networkDescription, Set<String> services){
@@ -259,13 +400,13 @@ public class Extraction {
 
 
     private ChorStatsPair extractLegacy(Network network, Set<String> services){
-        var graphContainer = GraphBuilder.buildSEG(network, services, extractionStrategy);
+        var graphContainer = GraphBuilder.buildSEG(network, services, extractionStrategy, parallelConditionals);
 
-        var statistics = new Program.GraphData(graphContainer.graph().vertexSet().size(), graphContainer.badLoopCounter());
+        var statistics = new Program.GraphData(graphContainer.graph().nodeCount(), graphContainer.badLoopCounter());
         if (graphContainer.buildGraphResult() != BuildGraphResult.OK){
             return new ChorStatsPair(null, statistics);
         }
-        var choreography = ChoreographyBuilder.buildChoreography(graphContainer.rootNode(), graphContainer.graph());
+        var choreography = ChoreographyBuilder.buildChoreography(graphContainer.rootNode(), graphContainer.graph().toGraph());
 
         return new ChorStatsPair(choreography, statistics);
     }
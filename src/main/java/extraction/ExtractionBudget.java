@@ -0,0 +1,105 @@
+package extraction;
+
+import java.time.Duration;
+
+/**
+ * Limits on how much work an extraction may do. When a limit is exceeded, building the Symbolic Execution
+ * Graph stops, and the result of the extraction is TIMEOUT, BUDGET_EXCEEDED, or CANCELLED instead of
+ * a choreography. Limits not set are unbounded.<br>
+ * The time limit and heap growth are measured from when the extraction starts, and shared by all the
+ * independent networks of the extraction. The node and bad loop limits apply to each graph.<br>
+ * The extraction can also be stopped by calling cancel(), or by interrupting the thread it runs on.
+ */
+public class ExtractionBudget {
+    Duration timeLimit = null;
+    int nodeLimit = Integer.MAX_VALUE;
+    int badLoopLimit = Integer.MAX_VALUE;
+    long heapGrowthLimit = Long.MAX_VALUE;
+    private volatile boolean cancelled = false;
+
+    //Set limits
+    public ExtractionBudget setTimeLimit(Duration timeLimit){this.timeLimit = timeLimit; return this;}
+    public ExtractionBudget setNodeLimit(int nodeLimit){this.nodeLimit = nodeLimit; return this;}
+    public ExtractionBudget setBadLoopLimit(int badLoopLimit){this.badLoopLimit = badLoopLimit; return this;}
+    public ExtractionBudget setHeapGrowthLimit(long bytes){heapGrowthLimit = bytes; return this;}
+
+    /**
+     * Stops all extractions using this budget. They complete with the result CANCELLED.
+     */
+    public void cancel(){cancelled = true;}
+    public boolean isCancelled(){return cancelled;}
+
+    /**
+     * Starts measuring an extraction against this budget. The extraction is cancelled if the calling thread
+     * is interrupted, even if the graphs are built on different threads.
+     */
+    Meter start(){
+        return new Meter(this, null);
+    }
+
+    /**
+     * Measures the time and memory spent by an extraction since it started.
+     * A Meter can be cancelled without cancelling the budget, or the Meter it was forked from.
+     */
+    static class Meter{
+        private static final int HEAP_CHECK_INTERVAL = 256;    //Reading the heap usage is slower than the other checks
+        private final ExtractionBudget budget;
+        private final Meter parent;
+        private final long deadline;
+        private final long heapBase;
+        private final Thread thread;                            //The thread that started the extraction
+        private volatile boolean cancelled = false;
+        private int checks = 0;
+
+        private Meter(ExtractionBudget budget, Meter parent){
+            this.budget = budget;
+            this.parent = parent;
+            if (parent != null){
+                deadline = parent.deadline;
+                heapBase = parent.heapBase;
+                thread = parent.thread;
+            } else {
+                thread = Thread.currentThread();
+                deadline = budget.timeLimit == null ? 0 : System.nanoTime() + budget.timeLimit.toNanos();
+                heapBase = budget.heapGrowthLimit == Long.MAX_VALUE ? 0 : usedHeap();
+            }
+        }
+
+        /**
+         * Creates a Meter for part of the extraction, which shares the time and heap measurements of this one.
+         */
+        Meter fork(){
+            return new Meter(budget, this);
+        }
+
+        void cancel(){cancelled = true;}
+
+        private boolean isCancelled(){
+            return cancelled || budget.cancelled || parent != null && parent.isCancelled();
+        }
+
+        /**
+         * Checks the budget, given the work done building a graph.
+         * @param nodes The number of nodes created for the graph.
+         * @param badLoops The number of bad loops encountered building the graph.
+         * @return null if the extraction is within budget, or the result it should stop with otherwise.
+         */
+        BuildGraphResult check(int nodes, int badLoops){
+            if (isCancelled() || thread.isInterrupted())
+                return BuildGraphResult.CANCELLED;
+            if (budget.timeLimit != null && System.nanoTime() - deadline > 0)
+                return BuildGraphResult.TIMEOUT;
+            if (nodes > budget.nodeLimit || badLoops > budget.badLoopLimit)
+                return BuildGraphResult.BUDGET_EXCEEDED;
+            if (budget.heapGrowthLimit != Long.MAX_VALUE && ++checks % HEAP_CHECK_INTERVAL == 0 &&
+                    usedHeap() - heapBase > budget.heapGrowthLimit)
+                return BuildGraphResult.BUDGET_EXCEEDED;
+            return null;
+        }
+
+        private static long usedHeap(){
+            var runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+}
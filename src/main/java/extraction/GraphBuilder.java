@@ -2,199 +2,735 @@ package extraction;
 
 import extraction.Node.ConcreteNode;
 import extraction.network.*;
-import extraction.network.utils.ProcessInteractionChecker;
-import org.jgrapht.graph.DirectedPseudograph;
 
 import java.util.*;
-import java.util.function.Function;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class GraphBuilder {
     private final Prospector prospector;
-    private final DirectedPseudograph<Node, Label> graph = new DirectedPseudograph<>(Label.class);
-    private final HashMap<String, ArrayList<ConcreteNode>> choicePaths = new HashMap<>();
-    private final HashMap<Integer, ArrayList<ConcreteNode>> nodeHashes = new HashMap<>();
-    private final HashMap<String, ConcreteNode> conditionalAncestry = new HashMap<>();
+    private final SEGStore graph;                               //null when building a speculative branch
+    private final HashMap<ChoicePath, ArrayList<ConcreteNode>> choicePaths = new HashMap<>();
+    private final HashMap<NetworkFingerprint.Key, ArrayList<ConcreteNode>> nodeHashes = new HashMap<>();
+    private final HashMap<ChoicePath, ConcreteNode> conditionalAncestry = new HashMap<>();
     private final Set<String> services;
+    private final ProcessNames processNames;                    //IDs of the processes in markings
     private int badLoopCounter = 0;//Currently broken, since I'm unsure what counts at attempting to form a loop anymore.
     private int nextNodeID = 0;
-
-    private GraphBuilder(Strategy extractionStrategy, Set<String> services){
-        prospector = new Prospector(extractionStrategy, this);
+    private final GraphStatistics statistics = new GraphStatistics();
+
+    //Building else branches in parallel. See Speculation.
+    private final AtomicInteger speculationPermits;             //null when building sequentially
+    private final GraphBuilder parent;                          //The builder a speculative branch is build for, or null
+    private final int forkID;                                   //Nodes of parent with this ID or higher are not visible
+    private final HashSet<NetworkFingerprint.Key> parentLookups;//Fingerprint keys looked up in the nodes of parent
+    private final ArrayList<Consumer<GraphBuilder>> graphChanges;//Changes to apply to the graph of parent
+    private final ArrayList<ConcreteNode> createdNodes;          //Nodes to give IDs in parent on merge
+    private volatile boolean cancelled = false;
+    private final ExtractionBudget.Meter meter;                 //The budget of the construction, or null if unlimited
+    private final AtomicInteger nodesCounted;                   //Nodes created by this builder and its speculations
+    private final AtomicInteger badLoopsCounted;                //Bad loops of this builder and its speculations
+    private volatile BuildGraphResult stopped = null;           //Set if the construction exceeded its budget
+
+    private GraphBuilder(Strategy extractionStrategy, Set<String> services, boolean parallel, ExtractionBudget.Meter meter){
+        prospector = new Prospector(extractionStrategy);
         this.services = services;
+        this.meter = meter;
+        nodesCounted = new AtomicInteger();
+        badLoopsCounted = new AtomicInteger();
+        processNames = new ProcessNames();
+        graph = new SEGStore();
+        speculationPermits = parallel ? new AtomicInteger(ForkJoinPool.getCommonPoolParallelism()) : null;
+        parent = null;
+        forkID = 0;
+        parentLookups = null;
+        graphChanges = null;
+        createdNodes = null;
+    }
+
+    /**
+     * Creates a builder for a speculative branch, which sees the nodes parent had when the branch was forked.
+     */
+    private GraphBuilder(GraphBuilder parent){
+        prospector = parent.prospector;
+        services = parent.services;
+        meter = parent.meter;
+        nodesCounted = parent.nodesCounted;
+        badLoopsCounted = parent.badLoopsCounted;
+        processNames = parent.processNames;
+        graph = null;
+        speculationPermits = parent.speculationPermits;
+        this.parent = parent;
+        forkID = parent.nextNodeID;
+        parentLookups = new HashSet<>();
+        graphChanges = new ArrayList<>();
+        createdNodes = new ArrayList<>();
     }
 
-    public record SEGContainer (DirectedPseudograph<Node, Label> graph, ConcreteNode rootNode,
-                                       BuildGraphResult buildGraphResult, int badLoopCounter) {}
+    public record SEGContainer (SEGStore graph, ConcreteNode rootNode,
+                                       BuildGraphResult buildGraphResult, int badLoopCounter,
+                                       GraphStatistics statistics) {}
 
     /**
      * Builds a Symbolic ExecutionGraph (SEG) over the execution paths that a network may take.
      * @param network The network to build an SEG for.
      * @param services Set of names of processes that are allowed to be starved.
      * @return A container with the graph, its root, the success status of the construction, and
-     * how many times a failed attempt to create a loop in the graph was made.
+     * how many times a failed attempt to create a loop in the graph was made, and counters for the loop
+     * closure lookups.
      */
     public static SEGContainer buildSEG(Network network, Set<String> services, Strategy strategy){
-        var builder = new GraphBuilder(strategy, services);
-        return builder.buildSEG(network, services);
+        return buildSEG(network, services, strategy, false);
+    }
+
+    /**
+     * Builds a Symbolic ExecutionGraph (SEG) over the execution paths that a network may take.
+     * @param network The network to build an SEG for.
+     * @param services Set of names of processes that are allowed to be starved.
+     * @param parallel If true, the else branches of conditionals are build in parallel with their then branches.
+     *                 The resulting graph is identical to the one build sequentially.
+     * @return A container with the graph, its root, the success status of the construction, and
+     * how many times a failed attempt to create a loop in the graph was made, and counters for the loop
+     * closure lookups.
+     */
+    public static SEGContainer buildSEG(Network network, Set<String> services, Strategy strategy, boolean parallel){
+        return buildSEG(network, services, strategy, parallel, null);
+    }
 
+    /**
+     * Builds a Symbolic ExecutionGraph (SEG) over the execution paths that a network may take, within a budget.
+     * @param meter Measures the work done against the budget of the extraction, or null if the work is unlimited.
+     * @return Same as buildSEG(Network, Set, Strategy, boolean), except the buildGraphResult is TIMEOUT,
+     * BUDGET_EXCEEDED, or CANCELLED if the construction was stopped before it completed.
+     */
+    static SEGContainer buildSEG(Network network, Set<String> services, Strategy strategy, boolean parallel,
+                                 ExtractionBudget.Meter meter){
+        var builder = new GraphBuilder(strategy, services, parallel, meter);
+        return builder.buildSEG(network, services);
     }
     private SEGContainer buildSEG(Network network, Set<String> services){
-        var marking = new HashMap<String, Boolean>(network.processes.size());
+        var marking = new Marking(processNames);
         network.processes.forEach((processName, __) ->
             marking.put(processName, services.contains(processName))
         );
-        var root = new ConcreteNode(network, "-", nextNodeID++, 0, marking);
-        graph.addVertex(root);
+        var root = new ConcreteNode(network, ChoicePath.root(), newNodeID(), 0, marking);
+        root.readySet = ReadySet.of(processNames, network.processes.keySet());
+        addVertex(root);
         addToChoicePathsMap(root);
         addToNodeHashes(root);
 
-        BuildGraphResult result = prospector.prospect(root);
+        BuildGraphResult result = run(new ProspectTask(root));
+
+        return new SEGContainer(graph, root, result, badLoopCounter, statistics);
+
+    }
+
+    /* ============================
+        SEG construction
+       ============================ */
+    /*
+     * The SEG is build depth-first, where prospecting for advancements of a node, building the graph on an
+     * advancement, and extending the graph with a new node, each depends on the result of the others.
+     * Instead of recursion, each of these steps is a Task on an explicit stack, such that the depth of the
+     * SEG is only bounded by the heap, and not the size of the thread stack.
+     */
+
+    /**
+     * A step of building the SEG, which may need the result of building a different part of the graph
+     * before it can complete.
+     */
+    private abstract static class Task{
+        BuildGraphResult result;    //Set when the task is complete
+
+        /**
+         * Continues the task.
+         * @param subtaskResult The result of the last subtask this task returned, or null when the task starts.
+         * @return A subtask that must complete before this task can continue, or null if this task is complete.
+         */
+        abstract Task resume(BuildGraphResult subtaskResult);
+    }
+
+    /**
+     * Runs a Task, and all subtasks it depends on, until it is complete.
+     * The budget is checked before each step, which is either prospecting for an advancement, or extending the
+     * graph with one. Speculative builders check it with the nodes and bad loops of the whole construction,
+     * such that building in parallel is stopped at the same limits as building sequentially.
+     * @return The result of the task, or the reason the construction was stopped. Speculative builders return
+     * null if they were stopped.
+     */
+    private BuildGraphResult run(Task task){
+        var stack = new ArrayDeque<Task>();
+        stack.push(task);
+        BuildGraphResult result = null;
+        while (!stack.isEmpty()){
+            if (meter != null && stopped == null)
+                stopped = meter.check(nodesCounted.get(), badLoopsCounted.get());
+            if (isCancelled())
+                return parent == null ? stopped : null;
+            Task subtask = stack.peek().resume(result);
+            if (subtask != null){
+                stack.push(subtask);
+                result = null;
+            }
+            else
+                result = stack.pop().result;
+        }
+        return result;
+    }
+
+    /**
+     * Searches for ways to advance the Network of a node, and tries to build the graph on each until
+     * one succeeds or fails, skipping those that creates bad loops.
+     * The result is OK if this branch of the SEG is complete, or FAIL if the network is not extractable.
+     */
+    private class ProspectTask extends Task{
+        private final ConcreteNode currentNode;
+        private final Prospector.Prospection prospection;
+
+        ProspectTask(ConcreteNode currentNode){
+            this.currentNode = currentNode;
+            prospection = prospector.prospect(currentNode);
+        }
 
-        return new SEGContainer(graph, root, result, badLoopCounter);
+        @Override
+        Task resume(BuildGraphResult buildResult){
+            //In case of bad loops, the graph remains unchanged. Reset the network, and try the next advancement
+            if (buildResult == BuildGraphResult.BAD_LOOP)
+                prospection.badLoop();
+            //Otherwise, the result is either OK on success, or FAIL if the network is not extractable
+            else if (buildResult != null){
+                result = buildResult;
+                return null;
+            }
 
+            Network.Advancement advancement = prospection.next();
+            if (advancement == null){
+                result = prospection.exhausted();
+                return null;
+            }
+            return new BuildTask(advancement, currentNode);
+        }
     }
 
     /**
      * Builds the graph depth-first on a possible advancement of the network. If advancement contains the
      * details of a conditional, two branches are build, one for each branch.
-     * If this function does not return OK, the graph is not modified.
-     * @param advancement Container with the target Network for the next node, and the Label for the action that
-     *                    created the target Network.
-     *                    If elseLabel and elseNetwork is not null, then label and network are considered the
-     *                    corresponding thenLabel and thenNetwork.
-     * @param currentNode The node currently being build from.
-     * @return OK on success, BAD_LOOP if a different action is needed to build on the graph, or FAIL if
-     * the network is not extractable.
+     * The result is OK on success, BAD_LOOP if a different action is needed to build on the graph, or FAIL if
+     * the network is not extractable. If the result is not OK, the graph is not modified.
      */
-    BuildGraphResult buildGraph(Network.Advancement advancement, ConcreteNode currentNode) {
-        var targetMarking = new HashMap<>(currentNode.marking);
-        var label = advancement.label();
-        var targetNetwork = advancement.network();
-
-        advancement.actors().forEach(name -> targetMarking.put(name, Boolean.TRUE));
-        if (!targetMarking.containsValue(false))
-            flipAndResetMarking(label, targetMarking, targetNetwork);
-
-        //Attempts to expand on the graph using the advancement of the prospector.
-        //Either creates a loop, or adds edge and new node to the graph, and builds upon the new node
-        extensionResult extension = extendGraph(targetNetwork, targetMarking, label, currentNode);
-
-        //Expanding the graph using the provided advancement might not be possible.
-        //Return BAD_LOOP if an invalid loop would be formed, or FAIL if the network cannot be extracted.
-        if (extension.buildResult != BuildGraphResult.OK)
-            return extension.buildResult;
-
-        //If there is no else branch (the advancement is not a conditional) return success.
-        if (advancement.elseLabel() == null)
-            return BuildGraphResult.OK;
-
-        //currentNode is a conditional node, and should be added to the map from choice paths
-        //to the conditional unique to that path.
-        conditionalAncestry.put(currentNode.choicePath, currentNode);
-
-        //If there is an else branch, the above code build the then branch. Now to build the else branch.
-        Label elseLabel = advancement.elseLabel();
-        Network elseNetwork = advancement.elseNetwork();
-        elseLabel.flipped = label.flipped;
-
-        //The function cleans up after itself on failure, so we only need the result status
-        BuildGraphResult elseResult = extendGraph(elseNetwork, targetMarking, elseLabel, currentNode).buildResult;
-
-        //If both branches was successfully build, return OK
-        if (elseResult == BuildGraphResult.OK)
-            return BuildGraphResult.OK;
-
-        //The else branch could not be build. Remove the then branch, and return the failure status.
-        if (extension.createdNewNode)
-            removeGraphBranch(extension.targetNode.choicePath);
-        else
-            graph.removeEdge(currentNode, extension.targetNode);
-        return elseResult;
+    private class BuildTask extends Task{
+        private final Network.Advancement advancement;
+        private final ConcreteNode currentNode;
+        private ExtendTask thenExtension, elseExtension;
+        private Speculation elseSpeculation;    //The else branch, if it is being build in parallel
+
+        /**
+         * @param advancement Container with the target Network for the next node, and the Label for the action that
+         *                    created the target Network.
+         *                    If elseLabel and elseNetwork is not null, then label and network are considered the
+         *                    corresponding thenLabel and thenNetwork.
+         * @param currentNode The node currently being build from.
+         */
+        BuildTask(Network.Advancement advancement, ConcreteNode currentNode){
+            this.advancement = advancement;
+            this.currentNode = currentNode;
+        }
+
+        @Override
+        Task resume(BuildGraphResult extensionResult){
+            if (thenExtension == null){
+                var targetMarking = currentNode.marking.copy();
+                var label = advancement.label();
+                var targetNetwork = advancement.network();
+
+                advancement.actors().forEach(name -> targetMarking.put(name, true));
+                if (targetMarking.allMarked())
+                    flipAndResetMarking(label, targetMarking, targetNetwork);
+
+                if (advancement.elseLabel() != null){
+                    advancement.elseLabel().flipped = label.flipped;
+                    elseSpeculation = speculate(advancement.elseNetwork(), targetMarking, advancement.elseLabel(),
+                            advancement.actors(), currentNode);
+                }
+
+                //Attempts to expand on the graph using the advancement of the prospector.
+                //Either creates a loop, or adds edge and new node to the graph, and builds upon the new node
+                thenExtension = new ExtendTask(targetNetwork, targetMarking, label, advancement.actors(), currentNode);
+                return thenExtension;
+            }
+            if (elseExtension == null){
+                //Expanding the graph using the provided advancement might not be possible.
+                //Return BAD_LOOP if an invalid loop would be formed, or FAIL if the network cannot be extracted.
+                //If there is no else branch (the advancement is not a conditional) return success.
+                if (extensionResult != BuildGraphResult.OK || advancement.elseLabel() == null){
+                    if (elseSpeculation != null)
+                        elseSpeculation.cancel();
+                    result = extensionResult;
+                    return null;
+                }
+
+                //currentNode is a conditional node, and should be added to the map from choice paths
+                //to the conditional unique to that path.
+                putConditionalAncestor(currentNode);
+
+                //If there is an else branch, the above code build the then branch. Now to build the else branch.
+                //If it was build in parallel, and turned out the same as if it was build now, use that instead.
+                var elseResult = elseSpeculation == null ? null : elseSpeculation.join();
+                if (elseResult != null)
+                    return completeConditional(elseResult);
+                //The task cleans up after itself on failure, so we only need the result status
+                elseExtension = new ExtendTask(advancement.elseNetwork(), thenExtension.marking, advancement.elseLabel(),
+                        advancement.actors(), currentNode);
+                return elseExtension;
+            }
+
+            return completeConditional(extensionResult);
+        }
+
+        /**
+         * Completes the task, once the else branch has been build with the provided result.
+         */
+        private Task completeConditional(BuildGraphResult elseResult){
+            //If both branches was successfully build, return OK
+            //Otherwise, the else branch could not be build. Remove the then branch, and return the failure status.
+            if (elseResult != BuildGraphResult.OK){
+                if (thenExtension.createdNewNode)
+                    removeGraphBranch(thenExtension.targetNode.choicePath);
+                else
+                    removeEdge(currentNode, thenExtension.targetNode);
+            }
+            result = elseResult;
+            return null;
+        }
     }
 
     /**
      * Attempts to do one of the following:<br>
      * 1. Adds an edge from currentNode to a different existing node in the graph, such that the existing node
      * contains the same marking and equivalent network to the marking and network parameters. Then
-     * returns and object with the found node, and the BuildGraphResult OK<br>
-     * 2. Attempts 1, but finds that such and edge would create and invalid loop. Returns an object
-     * containing the BuildGraphResult BAD_LOOP.<br>
+     * completes with the found node as targetNode, and the result OK<br>
+     * 2. Attempts 1, but finds that such and edge would create and invalid loop. Completes with the
+     * result BAD_LOOP.<br>
      * 3. Adds a new node to the graph with the provided network and marking, and then adds an edge from currentNode to
-     * that new node. Then attempts to build the graph out from that new node. Returns an object with the new node,
-     * the result of building the graph out from that node, and boolean being true to indicate a new node was added.<br>
+     * that new node. Then attempts to build the graph out from that new node. Completes with the new node as
+     * targetNode, the result of building the graph out from that node, and createdNewNode being true.
+     * If building from the new node did not succeed, the node is removed again.<br>
      *
-     * The provided label is stored in the new edge in all cases. The returned object may also contain
-     * the BuildGraphResult FAIL in case it detects a resource leak.
-     *
-     * @param network The network to either add to a new node, or check a node with an equivalent network already exists.
-     * @param marking The marking of the network.
-     * @param label The label to store in the created edge.
-     * @param currentNode The node previously added to the graph, which is the origin of the new edge.
-     * @return An object denoting the target node of the new edge, the success of extending the graph, and a
-     * boolean indicating if a new node was added to the graph or not.
+     * The provided label is stored in the new edge in all cases. The task may also complete with
+     * the result FAIL in case it detects a resource leak.
      */
-    private extensionResult extendGraph(Network network, HashMap<String, Boolean> marking, Label label, ConcreteNode currentNode){
-        //**Try to see if a loop can be formed**
+    private class ExtendTask extends Task{
+        private final Network network;
+        private final Marking marking;
+        private final Label label;
+        private final Set<String> actors;
+        private final ConcreteNode currentNode;
+        private ConcreteNode targetNode;
+        private boolean createdNewNode = false;
+
+        /**
+         * @param network The network to either add to a new node, or check a node with an equivalent network already exists.
+         * @param marking The marking of the network.
+         * @param label The label to store in the created edge.
+         * @param actors The processes that acted to advance the network of currentNode to network.
+         * @param currentNode The node previously added to the graph, which is the origin of the new edge.
+         */
+        ExtendTask(Network network, Marking marking, Label label, Set<String> actors, ConcreteNode currentNode){
+            this.network = network;
+            this.marking = marking;
+            this.label = label;
+            this.actors = actors;
+            this.currentNode = currentNode;
+        }
+
+        @Override
+        Task resume(BuildGraphResult prospectResult){
+            if (createdNewNode){
+                //Building out from the new node is complete
+                if (prospectResult != BuildGraphResult.OK)//TODO Probably just need to be equal to BAD_LOOP
+                    removeNodeFromGraph(targetNode);
+                result = prospectResult;
+                return null;
+            }
+
+            //**Try to see if a loop can be formed**
+            var fingerprint = NetworkFingerprint.of(network, marking);
+            if (tryFormLoop(fingerprint))
+                return null;
+
+            //**A loop cannot be formed. Create a new node for the graph.**
+            //The network may be a working copy that changes later, so the node gets a snapshot of it
+            targetNode = createNode(network.snapshot(), label, currentNode, marking);
+            targetNode.fingerprint = fingerprint;
+            targetNode.readySet = currentNode.readySet.child(actors);   //Only the actors changed
+            createdNewNode = true;
+            label.becomes = Map.of();//Reset in case it was set before a failed edge creation.
+            addNodeAndEdgeToGraph(currentNode, targetNode, label);
+            //Try to expand the graph from the new node
+            return new ProspectTask(targetNode);
+        }
+
+        /**
+         * Searches for a node in the graph the network can form a loop with.
+         * @return true if the search determined the result of this task, and false if a new node is needed.
+         */
+        private boolean tryFormLoop(NetworkFingerprint fingerprint){
+            //Calculate the flip counter of the hypothetical next node.
+            int flipCounter = currentNode.flipCounter + (label.flipped ? 1 : 0);
+
+            //Get a list of nodes with the same set of process terms.
+            List<ConcreteNode> viableNodes = loopCandidates(fingerprint.key());
+
+            //We do not want to add an edge to a terminated node. It created ugly choreographies.
+            if (network.allTerminated())
+                viableNodes = List.of();
+            statistics.recordLookup(viableNodes.size());
 
-        //Calculate the flip counter of the hypothetical next node.
-        int flipCounter = currentNode.flipCounter + (label.flipped ? 1 : 0);
+            //Iterate though the nodes with the same fingerprint, and see if they have equivalent behaviour.
+            for (ConcreteNode otherNode : viableNodes){
 
-        //Get a list of nodes with the same network and marking hash, and the same choicePath.
-        List<ConcreteNode> viableNodes = nodeHashes.getOrDefault(hashMarkedNetwork(network, marking), new ArrayList<>());//TODO remove marking
+                if (currentNode.choicePath.startsWith(otherNode.choicePath) && flipCounter > otherNode.flipCounter && detectResourceLeak(network, otherNode.network)) {
+                    System.err.println("Resource leak detected. Extraction not possible");
+                    return complete(otherNode, BuildGraphResult.FAIL);   //Abort extraction
+                }
+
+                //Cheap checks that rule out a bijective mapping, or compatible markings
+                if (!fingerprint.sameMultiset(otherNode.fingerprint)){
+                    statistics.multisetMismatches++;
+                    continue;
+                }
+                if (fingerprint.unmarked() > otherNode.fingerprint.unmarked()){
+                    statistics.markingMismatches++;
+                    continue;
+                }
+
+                //Try to generate a bijective mapping (proving behavioural equivalence),
+                //and try the next viable node if no such mapping exists
+                statistics.mappingAttempts++;
+                var parameters = BijectiveMapping.find(network, otherNode.network);
+                if (parameters == null)
+                    statistics.falsePositives++;
+
+                //Compare markings
+                if (parameters == null || !marking.compatibleWith(otherNode.marking, parameters, network)){
+                    //The networks may still be equivalent by permuting interchangeable processes
+                    if (tryFormSymmetricLoop(otherNode))
+                        return complete(otherNode, BuildGraphResult.OK);
+                    continue;   //Markings are incompatible, try the next viable node
+                }
+
+                //The current network and state is equivalent to a previous node, so a loop can be formed, maybe.
+                //Store the mapping to generate parameters for the choreography invocation
+                label.becomes = parameters;
+                //Try to add the loop to the graph.
+                //Return BAD_LOOP if not every process reduced in the loop.
+                if (addEdgeToGraph(currentNode, otherNode, label))
+                    return complete(otherNode, BuildGraphResult.OK);
+                //if otherNode is a build-ancestor, this is a bad loop
+                else if (currentNode.choicePath.startsWith(otherNode.choicePath)) {
+                    return complete(otherNode, BuildGraphResult.BAD_LOOP);
+                }
+                //If otherNode is of a different branch, then this is not a bad loop
+            }
+            return false;
+        }
+
+        /**
+         * Tries to form a loop to otherNode by a renaming that permutes interchangeable processes, which may
+         * rename processes to names they have in both networks, and is compatible with the markings.
+         * Such a loop makes states that only differ by which of the interchangeable processes has advanced share
+         * a node, and label.becomes captures the permutation. Only valid loops are formed this way, since the
+         * result of building the graph would otherwise depend on the permutations tried.
+         * @return true if the loop was added to the graph.
+         */
+        private boolean tryFormSymmetricLoop(ConcreteNode otherNode){
+            if (!checkLoop(currentNode, otherNode, label))
+                return false;
+            statistics.orbitSearches++;
+            var permutation = BijectiveMapping.findInOrbit(network, otherNode.network,
+                    (process, renamed) -> marking.mayRename(process, otherNode.marking, renamed));
+            if (permutation == null)
+                return false;
+            statistics.symmetricLoops++;
+            label.becomes = permutation;
+            return addEdge(currentNode, otherNode, label);
+        }
+
+        private boolean complete(ConcreteNode otherNode, BuildGraphResult loopResult){
+            targetNode = otherNode;
+            result = loopResult;
+            return true;
+        }
+    }
+
+    /* ============================
+        Parallel else branches
+       ============================ */
+    /*
+     * When building in parallel, the else branch of a conditional is build by a speculative GraphBuilder on a
+     * different thread, while the then branch is build as usual. The speculative builder sees the nodes that
+     * existed when it was forked, and records the changes it makes to the graph instead of making them.
+     * Once the then branch is complete, the else branch would normally be build. If none of the nodes the then
+     * branch added could have been a loop candidate for the else branch, the speculative branch is identical
+     * to the branch that would be build now, and its nodes and graph changes are merged into this builder.
+     * Otherwise, the speculative branch is discarded, and the else branch is build sequentially.
+     * Node IDs are assigned as if the else branch was build after the then branch, so the result is identical
+     * to building the graph sequentially. Speculative builders may speculate on their own conditionals.
+     */
 
-        //We do not want to add an edge to a terminated node. It created ugly choreographies.
-        if (network.allTerminated())
-            viableNodes = List.of();
+    /**
+     * An else branch being build by a speculative GraphBuilder.
+     */
+    private class Speculation implements Runnable{
+        private static final int WAITING = 0, RUNNING = 1, ABANDONED = 2;
+        private final GraphBuilder builder;
+        private final ExtendTask extension;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private BuildGraphResult result;
+        private RuntimeException failure;                       //Thrown while building the branch, if any
+        private boolean finished = false, discarded = false;   //Guarded by this
+
+        Speculation(GraphBuilder builder, ExtendTask extension){
+            this.builder = builder;
+            this.extension = extension;
+        }
 
-        //Iterate though the nodes with the same hash, and see if they have equivalent behaviour.
-        for (ConcreteNode otherNode : viableNodes){
+        @Override
+        public void run(){
+            if (!state.compareAndSet(WAITING, RUNNING))
+                return;
+            try{
+                result = builder.run(extension);
+            } catch (RuntimeException e){
+                failure = e;
+            } finally {
+                speculationPermits.incrementAndGet();
+                finish();
+                done.countDown();
+            }
+        }
 
-            if (currentNode.choicePath.startsWith(otherNode.choicePath) && flipCounter > otherNode.flipCounter && detectResourceLeak(network, otherNode.network)) {
-                System.err.println("Resource leak detected. Extraction not possible");
-                return new extensionResult(otherNode, BuildGraphResult.FAIL);   //Abort extraction
+        /**
+         * Waits for the else branch to be build, and merges it into this builder if it is the same as the branch
+         * that would be build sequentially at this point.
+         * If interrupted while waiting, the branch is cancelled, and this waits for its builder to stop.
+         * @return The result of building the else branch, or null if it must be build sequentially.
+         * @throws RuntimeException The exception thrown while building the else branch, if the branch is the
+         *                          same as the branch that would be build sequentially.
+         */
+        BuildGraphResult join(){
+            if (state.compareAndSet(WAITING, ABANDONED)){
+                speculationPermits.incrementAndGet();   //Not started yet. Faster to build it on this thread.
+                return null;
             }
+            try{
+                done.await();
+            } catch (InterruptedException e){
+                cancel();
+                awaitDone();
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (failure != null && !addedNodesSince(builder.forkID, builder.parentLookups)){
+                discard();
+                throw failure;
+            }
+            if (result == null || addedNodesSince(builder.forkID, builder.parentLookups)){
+                statistics.discardedSpeculations++;
+                discard();
+                return null;
+            }
+            merge(builder);
+            return result;
+        }
 
-            //Try to generate a bijective mapping (proving behavioural equivalence),
-            //and try the next viable node if no such mapping exists
-            var parameters = findBijectiveMapping(network, otherNode.network);
-            if (parameters == null)
-                continue;
-
-            //Compare markings
-            if (marking.keySet().stream().filter(pname -> !network.processes.get(pname).isTerminated()).anyMatch(
-                    pname -> !marking.get(pname) &&//If current marking is false, but the other nodes marking is true, then the process will not reduce in a loop.
-                            otherNode.marking.get(parameters.getOrDefault(pname,pname))))
-                continue;   //Markings are incompatible, try the next viable node
-
-            //The current network and state is equivalent to a previous node, so a loop can be formed, maybe.
-            //Store the mapping to generate parameters for the choreography invocation
-            label.becomes = parameters;
-            //Try to add the loop to the graph.
-            //Return BAD_LOOP if not every process reduced in the loop.
-            if (addEdgeToGraph(currentNode, otherNode, label))
-                return new extensionResult(otherNode, BuildGraphResult.OK);
-            //if otherNode is a build-ancestor, this is a bad loop
-            else if (currentNode.choicePath.startsWith(otherNode.choicePath)) {
-                return new extensionResult(otherNode, BuildGraphResult.BAD_LOOP);
+        /**
+         * Stops building the else branch, because the then branch could not be build.
+         */
+        void cancel(){
+            builder.cancelled = true;
+            if (state.compareAndSet(WAITING, ABANDONED))
+                speculationPermits.incrementAndGet();
+            else
+                discard();
+        }
+
+        /**
+         * Waits for a cancelled branch to stop building. The wait is short, so it is not cut off if the thread
+         * is interrupted, as the graph would otherwise be changed while the branch still reads it.
+         * The interrupt is kept.
+         */
+        private void awaitDone(){
+            boolean interrupted = false;
+            try{
+                while (true){
+                    try{
+                        done.await();
+                        return;
+                    } catch (InterruptedException e){
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
             }
-            //If otherNode is of a different branch, then this is not a bad loop
         }
 
-        //**A loop cannot be formed. Create a new node for the graph.**
-        ConcreteNode newNode = createNode(network, label, currentNode, marking);
-        label.becomes = Map.of();//Reset in case it was set before a failed edge creation.
-        addNodeAndEdgeToGraph(currentNode, newNode, label);
-        //Try to expand the graph from the new node
-        BuildGraphResult result = prospector.prospect(newNode);
-        if (result != BuildGraphResult.OK)//TODO Probably just need to be equal to BAD_LOOP
-            removeNodeFromGraph(newNode);
+        //The nodes and bad loops of a branch that is not merged are not part of the graph, and do not count
+        //towards the budget. They are uncounted once the branch has both finished and been discarded.
+        private synchronized void discard(){
+            if (!discarded && finished)
+                uncount();
+            discarded = true;
+        }
+
+        private synchronized void finish(){
+            if (discarded)
+                uncount();
+            finished = true;
+        }
+
+        private void uncount(){
+            nodesCounted.addAndGet(-builder.nextNodeID);
+            badLoopsCounted.addAndGet(-builder.badLoopCounter);
+        }
+    }
+
+    /**
+     * Starts building the else branch of a conditional in parallel, if building in parallel, and there is
+     * a thread available for it.
+     * @return The Speculation building the else branch, or null if it must be build sequentially.
+     */
+    private Speculation speculate(Network elseNetwork, Marking marking, Label elseLabel, Set<String> actors,
+                                  ConcreteNode currentNode){
+        if (speculationPermits == null)
+            return null;
+        int permits;
+        do {
+            permits = speculationPermits.get();
+            if (permits == 0)
+                return null;
+        } while (!speculationPermits.compareAndSet(permits, permits - 1));
+
+        var builder = new GraphBuilder(this);
+        builder.conditionalAncestry.put(currentNode.choicePath, currentNode);
+        var speculation = new Speculation(builder, builder.new ExtendTask(elseNetwork, marking, elseLabel, actors, currentNode));
+        statistics.speculations++;
+        ForkJoinPool.commonPool().execute(speculation);
+        return speculation;
+    }
+
+    private boolean isCancelled(){
+        return cancelled || stopped != null || parent != null && parent.isCancelled();
+    }
+
+    /**
+     * Returns the nodes that may form a loop with a network with the provided fingerprint key.
+     * The returned list must not be modified.
+     */
+    private List<ConcreteNode> loopCandidates(NetworkFingerprint.Key key){
+        List<ConcreteNode> ownNodes = nodeHashes.getOrDefault(key, new ArrayList<>());
+        if (parent == null)
+            return ownNodes;
+        parentLookups.add(key);
+        var candidates = parent.nodesBefore(key, forkID);
+        candidates.addAll(ownNodes);
+        return candidates;
+    }
 
-        return new extensionResult(newNode, result, true);
+    /**
+     * Returns the nodes with the provided fingerprint key, and an ID below the provided one, including those
+     * of parent builders.
+     */
+    private ArrayList<ConcreteNode> nodesBefore(NetworkFingerprint.Key key, int limitID){
+        var nodes = parent == null ? new ArrayList<ConcreteNode>() : parent.nodesBefore(key, forkID);
+        synchronized (nodeHashes){
+            for (var node : nodeHashes.getOrDefault(key, new ArrayList<>())){
+                if (node.ID < limitID)
+                    nodes.add(node);
+            }
+        }
+        return nodes;
     }
-    private record extensionResult(ConcreteNode targetNode, BuildGraphResult buildResult, boolean createdNewNode){
-        extensionResult(ConcreteNode targetNode, BuildGraphResult buildResult){
-            this(targetNode, buildResult, false);
+
+    /**
+     * Returns true if a node with one of the provided fingerprint keys, and an ID of at least firstID, is in the graph.
+     */
+    private boolean addedNodesSince(int firstID, Set<NetworkFingerprint.Key> keys){
+        synchronized (nodeHashes){
+            for (var key : keys){
+                for (var node : nodeHashes.getOrDefault(key, new ArrayList<>())){
+                    if (node.ID >= firstID)
+                        return true;
+                }
+            }
         }
+        return false;
+    }
+
+    /**
+     * Adds the nodes, graph changes, and counters of a completed speculative branch to this builder,
+     * as if the branch had been build by this builder.
+     */
+    private void merge(GraphBuilder branch){
+        int firstID = nextNodeID;
+        nextNodeID += branch.nextNodeID;
+        synchronized (nodeHashes){
+            //The nodes must have their final IDs before they are added to the graph
+            branch.createdNodes.forEach(node -> node.ID += firstID);
+            if (createdNodes != null)
+                createdNodes.addAll(branch.createdNodes);
+        }
+        branch.graphChanges.forEach(change -> change.accept(this));
+        synchronized (nodeHashes){
+            branch.choicePaths.forEach((path, nodes) ->
+                    choicePaths.computeIfAbsent(path, k -> new ArrayList<>()).addAll(nodes));
+            branch.nodeHashes.forEach((key, nodes) ->
+                    nodeHashes.computeIfAbsent(key, k -> new ArrayList<>()).addAll(nodes));
+        }
+        synchronized (conditionalAncestry){
+            conditionalAncestry.putAll(branch.conditionalAncestry);
+        }
+        if (parentLookups != null)
+            parentLookups.addAll(branch.parentLookups);
+        badLoopCounter += branch.badLoopCounter;
+        statistics.add(branch.statistics);
+    }
+
+    private int newNodeID(){
+        nodesCounted.incrementAndGet();
+        return nextNodeID++;
+    }
+
+    //Changes to the graph. Speculative builders records them, to be done by the parent builder on merge.
+    private void addVertex(ConcreteNode node){
+        if (graph != null)
+            graph.addVertex(node);
+        else
+            graphChanges.add(builder -> builder.addVertex(node));
+    }
+    private boolean addEdge(ConcreteNode source, ConcreteNode target, Label label){
+        if (graph != null)
+            graph.addEdge(source, target, label);
+        else
+            graphChanges.add(builder -> builder.addEdge(source, target, label));
+        return true;    //Every label is only added to the graph once
+    }
+    private void removeVertex(ConcreteNode node){
+        if (graph != null)
+            graph.removeVertex(node);
+        else
+            graphChanges.add(builder -> builder.removeVertex(node));
+    }
+    private void removeEdge(ConcreteNode source, ConcreteNode target){
+        if (graph != null)
+            graph.removeEdge(source, target);
+        else
+            graphChanges.add(builder -> builder.removeEdge(source, target));
     }
 
     /* ============================
@@ -203,29 +739,29 @@ public class GraphBuilder {
 
     /**
      * Removes all nodes from the graph, which are in a sub-branch of the graph.
-     * @param choicePathPrefix All nodes in the graph whose choice path begins with this string are removed.
+     * @param choicePathPrefix All nodes in the graph whose choice path begins with this path are removed.
      */
-    private void removeGraphBranch(String choicePathPrefix){
-        choicePaths.forEach((path, nodeList) -> {
-            if (path.startsWith(choicePathPrefix)){
+    private void removeGraphBranch(ChoicePath choicePathPrefix){
+        choicePathPrefix.forEachExtension(path -> {
+            var nodeList = choicePaths.remove(path);
+            if (nodeList != null){
                 nodeList.forEach(node -> {
-                    graph.removeVertex(node);
+                    removeVertex(node);
                     removeFromNodeHashes(node);
                 });
-                nodeList.clear();
             }
         });
     }
 
     private void removeNodeFromGraph(ConcreteNode node){
-        graph.removeVertex(node);
+        removeVertex(node);
         removeFromNodeHashes(node);
         removeFromChoicePathsMap(node);
     }
 
     private void addNodeAndEdgeToGraph(ConcreteNode currentNode, ConcreteNode newNode, Label label){
-        graph.addVertex(newNode);
-        graph.addEdge(currentNode, newNode, label);
+        addVertex(newNode);
+        addEdge(currentNode, newNode, label);
         addToChoicePathsMap(newNode);
         addToNodeHashes(newNode);
     }
@@ -233,8 +769,9 @@ public class GraphBuilder {
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     private boolean addEdgeToGraph(ConcreteNode source, ConcreteNode target, Label label){
         if (checkLoop(source, target, label))
-            return graph.addEdge(source, target, label);
+            return addEdge(source, target, label);
         badLoopCounter++;
+        badLoopsCounted.incrementAndGet();
         return false;
     }
 
@@ -246,18 +783,21 @@ public class GraphBuilder {
      * @param marking The process marking for this mode
      * @return A new ConcreteNode instance
      */
-    private ConcreteNode createNode(Network network, Label label, ConcreteNode predecessor, HashMap<String, Boolean> marking){
-        String choicePath = predecessor.choicePath;
+    private ConcreteNode createNode(Network network, Label label, ConcreteNode predecessor, Marking marking){
+        ChoicePath choicePath = predecessor.choicePath;
         if (label instanceof Label.ConditionLabel.ThenLabel)
-            choicePath += "1";
+            choicePath = choicePath.extend(true);
         else if (label instanceof Label.ConditionLabel.ElseLabel)
-            choicePath += "0";
+            choicePath = choicePath.extend(false);
 
         int flipCounter = predecessor.flipCounter;
         if (label.flipped)
             flipCounter++;
 
-        return new ConcreteNode(network, choicePath, nextNodeID++, flipCounter, marking);
+        var node = new ConcreteNode(network, choicePath, newNodeID(), flipCounter, marking);
+        if (createdNodes != null)
+            createdNodes.add(node);
+        return node;
     }
 
     /**
@@ -267,7 +807,7 @@ public class GraphBuilder {
      * and currentNetwork has more processes than previousNetwork, ignoring terminated processes.
      */
     //I'm assuming here that the variables do not need to be checked. Honestly they probably do :(
-    //Maybe merge it with findBijectiveMapping?
+    //Maybe merge it with BijectiveMapping?
     private boolean detectResourceLeak(Network currentNetwork, Network previousNetwork){
         var currentNonTerminated = currentNetwork.processes.values().stream().filter(term -> !term.isTerminated()).toList();
         var previousNonTerminated = previousNetwork.processes.values().stream().filter(term -> !term.isTerminated()).toList();
@@ -281,137 +821,6 @@ public class GraphBuilder {
         return true;//Should all processes of prevNetwork be in currentNetwork also?
     }
 
-    /**
-     * Calculates a mapping from process names in fromNetwork to process names in toNetwork, such that:<br>
-     * 1. The mapping is bijective.<br>
-     * 2. The processes have identical process terms.<br>
-     * 3. If a process gets mapped to a process of a different name, then any variables in toNetwork that refers
-     * to the process it maps to, refers to the remapped process in fromNetwork.<br>
-     * The returned map only contains mappings between processes of different names. Processes not in the
-     * returned map maps to themselves.
-     * @return A mapping of process names, representing a renaming that allows a loop to close.
-     */
-    private Map<String, String> findBijectiveMapping(Network fromNetwork, Network toNetwork){
-        Function<Map<String, ProcessTerm>, HashMap<String, ProcessTerm>> filterTerminated = original-> {
-            var newMap = new HashMap<String, ProcessTerm>();
-            original.forEach((name, term)->{
-                if (!term.isTerminated())
-                    newMap.put(name, term);
-            });
-            return newMap;
-        };
-        var fromProcesses = filterTerminated.apply(fromNetwork.processes);
-        var toProcesses = filterTerminated.apply(toNetwork.processes);
-        if (fromProcesses.size() != toProcesses.size())
-            return null;    //There can be no bijective mapping between a different number of processes
-        var unmatchedFrom = new HashSet<>(fromProcesses.keySet());
-        var unmatchedTo = new HashSet<>(toProcesses.keySet());
-        var map = new HashMap<String, String>();
-
-        //Ignore variable names for now, then try to fix the mapping if the variable mappings do not match.
-
-        //Find all processes that maps to themselves. This makes for fewer parameters in the final
-        //choreography, and this is probably the most common case.
-        toProcesses.forEach((name, toTerm) ->{
-            var fromTerm = fromProcesses.get(name);
-            if (fromTerm != null && toTerm.equals(fromTerm)){
-                unmatchedFrom.remove(name);
-                unmatchedTo.remove(name);
-            }
-        });
-        //Match up the remaining processes
-        for (var fromName : unmatchedFrom){
-            var fromTerm = fromProcesses.get(fromName);
-            for (var toName : unmatchedTo){
-                var toTerm = toProcesses.get(toName);
-                if (toTerm.equals(fromTerm)){
-                    unmatchedTo.remove(toName);
-                    map.put(fromName, toName);
-                    break;
-                }
-            }
-            //Check if the process could be matched. Fail if not
-            if (!map.containsKey(fromName))
-                return null;
-        }
-
-        //Now there is a bijective mapping of processes with identical behaviour.
-        //Next step is to check the variable bindings, and reshuffle the map if necessary.
-
-        //Run through the variables of each process. If they change binding, then check the mapping is
-        //consistent with the variable assignments.
-        //TODO Create tests for every case. Ensure 100% code coverage for this function
-
-        //Map, mapping process names in fromProcesses to a set of process names from toProcesses, such that
-        //every name in the set was a mapping that turned out to be incompatible with the variable assignments.
-        var badMappings = new HashMap<String, HashSet<String>>();
-
-        //Every time the mapping is changed, this loop repeats.
-        //If all variables corresponds to the mapping, the mapping is returned.
-        //Otherwise, it changes the map (if possible), notes the bad mapping in badMappings, and repeats the loop.
-        checkVariables:
-        while (true) {
-            //For every process in fromNetwork
-            for (var fromEntry : fromProcesses.entrySet()) {
-                //Get the processes that correspond to each other in the mapping, and their variables
-                String fromName = fromEntry.getKey();
-                ProcessTerm fromTerm = fromEntry.getValue();
-                String toName = map.getOrDefault(fromName, fromName);
-                ProcessTerm toTerm = toProcesses.get(toName);
-
-                Map<String, String> fromVars = fromTerm.getVariables();
-                Map<String, String> toVars = toTerm.getVariables();
-
-                //For every process in the toProcesses
-                //(the from-process may have strictly more variables, but the additional variables can be ignored, since they will be assigned before being used)
-                for (String varName : toVars.keySet()) {
-                    String toValue = toVars.get(varName);
-                    String fromValue = fromVars.get(varName);
-                    //If the variable corresponds to the remapping, check the next variable
-                    if (map.getOrDefault(fromValue, fromValue).equals(toValue))
-                        continue;
-                        //Otherwise, if the variable is unchanged, it might not be used in the loop, and thus can be ignored
-                    //else if (fromValue.equals(toValue)) {
-                        //Creates a set of all variable names used by the process since the start of the loop
-                        //(Procedure parameter vars may be considered variable names when they shouldn't.
-                        //See the function source for more information)
-                        Set<String> usedVars = ProcessInteractionChecker.CheckUsedVariables(toTerm);
-                        //If the problematic variable is not in the loop, its assignment does not affect correctness.
-                        if (!usedVars.contains(varName))
-                            continue;
-                    //}
-                    //The variables do not agree with the mapping
-                    //Try to fix the mapping by swapping entries if possible, and then check again.
-
-                    //Update the set of invalid assignments for this process
-                    HashSet<String> invalidAssignments = badMappings.computeIfAbsent(fromName, __ -> new HashSet<>());
-                    invalidAssignments.add(toName);
-
-                    //Look for a mapping that maps to a process with identical behaviour to toTerm
-                    for (var swappableMapping : map.entrySet()) {
-                        String altToName = swappableMapping.getValue();
-                        String altFromName = swappableMapping.getKey();
-                        ProcessTerm altToTerm = toProcesses.get(altToName);
-                        //If the existing and alt mapping, maps to processes with identical behaviour, and the target
-                        //of the alt mapping has not previously been assigned the current process, then swap them,
-                        //and re-check the variable assignments for the new mapping.
-                        if (altToTerm.equals(fromTerm) && !invalidAssignments.contains(altToName)) {
-                            map.put(fromName, altToName);
-                            map.put(altFromName, toName);
-                            continue checkVariables;   //Completely restart the variable check.
-                        }
-                    }
-                    //It was not possible to get the variables to correspond to any mapping
-                    //between the two networks. Return null to indicate no valid mapping exists.
-                    return null;
-                }
-            }
-
-            //There exists a bijective-mapping with the same (relevant) variable assignment. Success.
-            return map;
-        }
-    }
-
     /**
      * Checks if adding a new edge from source to target with the label would result in a bad loop.
      * @param source The hypothetical edge source.
@@ -440,13 +849,7 @@ public class GraphBuilder {
     private ConcreteNode getLowestCommonChoiceAncestor(ConcreteNode lower, ConcreteNode higher){
         if (lower.choicePath.startsWith(higher.choicePath))
             return higher;
-        int shortest = Math.min(lower.choicePath.length(), higher.choicePath.length());
-        int i = 0;
-        for (; i < shortest; i++){
-            if (lower.choicePath.charAt(i) != higher.choicePath.charAt(i))
-                break;
-        }//All choice-paths start with "-", so i should be at least 1.
-        return conditionalAncestry.get(lower.choicePath.substring(0, i));
+        return conditionalAncestor(lower.choicePath.commonPrefix(higher.choicePath));
     }
 
     /**
@@ -456,9 +859,9 @@ public class GraphBuilder {
      * @param label The label for the interaction that marked the last process.
      * @param network The network where all processes have been marked.
      */
-    private void flipAndResetMarking(Label label, HashMap<String, Boolean> marking, Network network){
+    private void flipAndResetMarking(Label label, Marking marking, Network network){
         label.flipped = true;
-        marking.replaceAll((name, __) -> network.processes.get(name).isTerminated() || services.contains(name));
+        marking.reset(name -> network.processes.get(name).isTerminated() || services.contains(name));
 
     }
 
@@ -467,36 +870,43 @@ public class GraphBuilder {
         nodesWithPath.add(node);
     }
 
-    /**
-     * Calculates a hashcode of a network's process terms along with that process' marking.
-     * If there are multiple identical terms, only one is used for the hash. The rest are skipped.
-     */
-    private static Integer hashMarkedNetwork(Network n, HashMap<String, Boolean> marking){
-        var unique = new HashSet<ProcessTerm>(n.processes.size());
-        final int[] hash = {0};     //lambdas do not allow direct modifications of ints.
-        n.processes.forEach((key, term) -> {
-            if (unique.add(term) && !term.isTerminated())  //Returns false if the element is already in the set
-                hash[0] += term.hashCode() * 31 ;//+ marking.get(key).hashCode();
-        });
-        return hash[0];
-        //return n.hashCode() + 31 * marking.hashCode();
-    }
-
     private void addToNodeHashes(ConcreteNode node){
-        Integer hash = hashMarkedNetwork(node.network, node.marking);
-        ArrayList<ConcreteNode> nodesWithHash = nodeHashes.computeIfAbsent(hash, k -> new ArrayList<>());
-        nodesWithHash.add(node);
+        if (node.fingerprint == null)
+            node.fingerprint = NetworkFingerprint.of(node.network, node.marking);
+        synchronized (nodeHashes){      //Speculative branches may read the nodes from other threads
+            ArrayList<ConcreteNode> nodesWithHash = nodeHashes.computeIfAbsent(node.fingerprint.key(), k -> new ArrayList<>());
+            nodesWithHash.add(node);
+        }
     }
 
     private void removeFromNodeHashes(ConcreteNode node){
-        ArrayList<ConcreteNode> viableNodes = nodeHashes.getOrDefault(hashMarkedNetwork(node.network, node.marking), new ArrayList<>());
-        for (var viableNode : viableNodes){
-            if (viableNode.network.equals(node.network)){
-                viableNodes.remove(viableNode);
-                break;
+        synchronized (nodeHashes){
+            ArrayList<ConcreteNode> viableNodes = nodeHashes.getOrDefault(node.fingerprint.key(), new ArrayList<>());
+            //Remove the node itself, rather than the first node with an equal network
+            for (int i = 0; i < viableNodes.size(); i++){
+                if (viableNodes.get(i) == node){
+                    viableNodes.remove(i);
+                    break;
+                }
             }
         }
-        //nodeHashes.remove(hashMarkedNetwork(node.network, node.marking));
+    }
+
+    private void putConditionalAncestor(ConcreteNode node){
+        synchronized (conditionalAncestry){
+            conditionalAncestry.put(node.choicePath, node);
+        }
+    }
+
+    /**
+     * @return The conditional node unique to the choice path, which may have been added by a parent builder.
+     */
+    private ConcreteNode conditionalAncestor(ChoicePath choicePath){
+        ConcreteNode ancestor;
+        synchronized (conditionalAncestry){
+            ancestor = conditionalAncestry.get(choicePath);
+        }
+        return ancestor == null && parent != null ? parent.conditionalAncestor(choicePath) : ancestor;
     }
 
     private void removeFromChoicePathsMap(ConcreteNode node){
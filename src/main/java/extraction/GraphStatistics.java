@@ -0,0 +1,68 @@
+package extraction;
+
+/**
+ * Counters collected while building a Symbolic Execution Graph, to see how much work
+ * the different parts of the construction does.
+ */
+public class GraphStatistics {
+    //Loop closure candidate lookups
+    public int fingerprintLookups;          //Number of times nodes with the same fingerprint key was looked up
+    public long bucketEntriesScanned;       //Total size of the looked up buckets
+    public int largestBucket;               //Size of the largest looked up bucket
+    public long multisetMismatches;         //Candidates rejected because the multiset of process terms differ
+    public long markingMismatches;          //Candidates rejected because they have too few unmarked processes
+    public long mappingAttempts;            //Candidates that needed a bijective mapping to be searched for
+    public long falsePositives;             //Mapping attempts that found no bijective mapping
+    public long orbitSearches;              //Searches for a loop by permuting interchangeable processes
+    public long symmetricLoops;             //Loops formed by permuting interchangeable processes
+    //Parallel else branches
+    public int speculations;                //Else branches started on a different thread
+    public int discardedSpeculations;       //Else branches that had to be build again sequentially
+
+    void recordLookup(int bucketSize){
+        fingerprintLookups++;
+        bucketEntriesScanned += bucketSize;
+        largestBucket = Math.max(largestBucket, bucketSize);
+    }
+
+    /**
+     * Adds the counters of a different part of the graph to these.
+     */
+    void add(GraphStatistics other){
+        fingerprintLookups += other.fingerprintLookups;
+        bucketEntriesScanned += other.bucketEntriesScanned;
+        largestBucket = Math.max(largestBucket, other.largestBucket);
+        multisetMismatches += other.multisetMismatches;
+        markingMismatches += other.markingMismatches;
+        mappingAttempts += other.mappingAttempts;
+        falsePositives += other.falsePositives;
+        orbitSearches += other.orbitSearches;
+        symmetricLoops += other.symmetricLoops;
+        speculations += other.speculations;
+        discardedSpeculations += other.discardedSpeculations;
+    }
+
+    /**
+     * @return The fraction of bijective mapping attempts that failed, or 0 if there was no attempts.
+     */
+    public double falsePositiveRate(){
+        return mappingAttempts == 0 ? 0 : (double) falsePositives / mappingAttempts;
+    }
+
+    /**
+     * @return The average number of nodes per lookup, or 0 if there was no lookups.
+     */
+    public double averageBucketSize(){
+        return fingerprintLookups == 0 ? 0 : (double) bucketEntriesScanned / fingerprintLookups;
+    }
+
+    @Override
+    public String toString(){
+        return ("lookups=%d, averageBucket=%.2f, largestBucket=%d, multisetMismatches=%d, markingMismatches=%d, " +
+                "mappingAttempts=%d, falsePositives=%d (%.1f%%), orbitSearches=%d, symmetricLoops=%d, " +
+                "speculations=%d, discardedSpeculations=%d").formatted(
+                fingerprintLookups, averageBucketSize(), largestBucket, multisetMismatches, markingMismatches,
+                mappingAttempts, falsePositives, 100 * falsePositiveRate(), orbitSearches, symmetricLoops,
+                speculations, discardedSpeculations);
+    }
+}
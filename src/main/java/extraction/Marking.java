@@ -0,0 +1,168 @@
+package extraction;
+
+import extraction.network.Network;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * The marking of the processes of a node in the SEG, telling which processes have acted since the marking
+ * was last reset.<br>
+ * The processes and their markings are stored as bits indexed by the IDs of a ProcessNames table, such that
+ * copying a marking, and comparing markings, is done a word at a time. A Marking should not be changed once
+ * the node it belongs to has been created.<br>
+ * Some strategies depend on the order the processes are iterated in, so a Marking also records the order
+ * the processes were added in. See forEach().
+ */
+public final class Marking {
+    private final ProcessNames names;
+    private long[] processes;       //Bit i is set if the process with ID i is in the marking
+    private long[] marked;          //Bit i is set if the process with ID i is marked
+    private int[] added;            //IDs of the processes in the order they were added. Shared by copies.
+
+    Marking(ProcessNames names){
+        this.names = names;
+        processes = new long[1];
+        marked = new long[1];
+        added = new int[0];
+    }
+
+    private Marking(Marking other){
+        names = other.names;
+        processes = other.processes.clone();
+        marked = other.marked.clone();
+        added = other.added;
+    }
+
+    /**
+     * @return A copy of this marking, which can be changed without affecting this one.
+     */
+    Marking copy(){
+        return new Marking(this);
+    }
+
+    /**
+     * Adds the process to the marking if it is not already there, and sets whether it is marked.
+     */
+    void put(String process, boolean isMarked){
+        int id = names.id(process);
+        int word = id >>> 6;
+        if (word >= processes.length){
+            int length = Math.max(processes.length * 2, word + 1);
+            processes = Arrays.copyOf(processes, length);
+            marked = Arrays.copyOf(marked, length);
+        }
+        if ((processes[word] & 1L << id) == 0){
+            added = Arrays.copyOf(added, added.length + 1);
+            added[added.length - 1] = id;
+        }
+        processes[word] |= 1L << id;
+        if (isMarked)
+            marked[word] |= 1L << id;
+        else
+            marked[word] &= ~(1L << id);
+    }
+
+    /**
+     * @return true if the process is in the marking.
+     */
+    public boolean contains(String process){
+        int id = names.find(process);
+        int word = id >>> 6;
+        return id != -1 && word < processes.length && (processes[word] & 1L << id) != 0;
+    }
+
+    /**
+     * @return true if the process is marked, and false if it is unmarked or not in the marking.
+     */
+    public boolean isMarked(String process){
+        return isMarked(names.find(process));
+    }
+
+    private boolean isMarked(int id){
+        int word = id >>> 6;
+        return id != -1 && word < marked.length && (marked[word] & 1L << id) != 0;
+    }
+
+    /**
+     * @return true if every process in the marking is marked.
+     */
+    boolean allMarked(){
+        for (int word = 0; word < processes.length; word++){
+            if ((processes[word] & ~marked[word]) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Calls action with each process of the marking, and whether it is marked, in the order the processes
+     * were added to the marking. Copies keep the order, and add new processes after the existing ones.
+     */
+    void forEach(BiConsumer<String, Boolean> action){
+        for (int id : added)
+            action.accept(names.name(id), isMarked(id));
+    }
+
+    /**
+     * Sets the processes in the marking for which isMarked returns true as marked, and the rest as unmarked.
+     */
+    void reset(Predicate<String> isMarked){
+        for (int word = 0; word < processes.length; word++){
+            long bits = processes[word];
+            long newMarked = 0;
+            while (bits != 0){
+                int id = word << 6 | Long.numberOfTrailingZeros(bits);
+                if (isMarked.test(names.name(id)))
+                    newMarked |= 1L << id;
+                bits &= bits - 1;
+            }
+            marked[word] = newMarked;
+        }
+    }
+
+    /**
+     * Checks if a loop can be formed from a node with this marking to a node with the other marking,
+     * given the renaming of the processes that makes the networks of the nodes equivalent.
+     * A loop is not allowed if a process that has not terminated is unmarked in this marking,
+     * but marked in the other, as the process would then never act in the loop.
+     * @param other The marking of the node the loop would go to.
+     * @param renaming Map from process names of network to the names of the processes in the other node.
+     *                 Processes not in the map keep their name.
+     * @param network The network of the node with this marking.
+     * @return true if the markings are compatible.
+     */
+    boolean compatibleWith(Marking other, Map<String, String> renaming, Network network){
+        //Processes that keep their name are compared a word at a time
+        int words = Math.min(processes.length, other.marked.length);
+        for (int word = 0; word < words; word++){
+            long conflicts = processes[word] & ~marked[word] & other.marked[word];
+            while (conflicts != 0){
+                String process = names.name(word << 6 | Long.numberOfTrailingZeros(conflicts));
+                if (!renaming.containsKey(process) && !network.processes.get(process).isTerminated())
+                    return false;
+                conflicts &= conflicts - 1;
+            }
+        }
+        for (var entry : renaming.entrySet()){
+            if (!mayRename(entry.getKey(), other, entry.getValue()) &&
+                    !network.processes.get(entry.getKey()).isTerminated())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a process that has not terminated may be renamed to a process of the node a loop would go to,
+     * which is the case unless it is unmarked in this marking, but the other process is marked in the other.
+     * A renaming is compatible with the markings if every process of it may be renamed.
+     * @param process The name of the process in the node with this marking.
+     * @param other The marking of the node the loop would go to.
+     * @param renamed The name of the process in the other node.
+     */
+    boolean mayRename(String process, Marking other, String renamed){
+        return isMarked(process) || !other.isMarked(renamed);
+    }
+}
@@ -0,0 +1,87 @@
+package extraction;
+
+import extraction.network.Network;
+import extraction.network.ProcessTerm;
+
+import java.util.Arrays;
+
+/**
+ * Fingerprint of the non-terminated process terms of a Network, used by GraphBuilder to find
+ * the nodes a new node may form a loop with.<br>
+ * The fingerprint consists of two parts, both independent of process names and of the iteration order
+ * of the processes:<br>
+ * 1. key: Fingerprint of the set of distinct hashes of the process terms. Nodes that can form a loop, or that
+ * indicate a resource leak, always have the same key, so it is used to bucket the nodes of the graph.
+ * Distinct terms whose hashes collide only make the buckets coarser.<br>
+ * 2. multiset: Fingerprint that also counts identical process terms. Nodes with different multisets cannot
+ * have a bijective mapping between their processes, so they are rejected without trying to find one.<br>
+ * Besides, it stores the number of non-terminated processes that are unmarked, since a node cannot loop
+ * back to a node with fewer unmarked processes.<br>
+ * Each process term contributes a value mixed from its hash, and the contributions are summed, so the fingerprint
+ * does not depend on the order of the processes. Both halves are mixed from the same 32-bit hash of the term,
+ * since that is the hash ProcessTerm keeps, so terms whose hashes collide always contribute the same value.
+ * The second half does not tell such terms apart, but makes it unlikely that the sums of different multisets of
+ * hashes are equal.<br>
+ * The fingerprint is calculated from all the processes of each new node, rather than updated from its parent by
+ * the processes that acted. The terms keep their hashes, so this only sums cached values, where an update would
+ * need the number of processes with each term, copied for every node, to know when a term leaves the key.
+ */
+record NetworkFingerprint(Key key, long multisetHigh, long multisetLow, int unmarked) {
+    /**
+     * Fingerprint of the set of distinct process terms of a Network.
+     */
+    record Key(long high, long low){}
+
+    /**
+     * Calculates the fingerprint of a Network and its marking.
+     * @param network The Network to fingerprint.
+     * @param marking The marking of the network.
+     * @return The fingerprint of the network and marking.
+     */
+    static NetworkFingerprint of(Network network, Marking marking){
+        long keyHigh = 0, keyLow = 0, multisetHigh = 0, multisetLow = 0;
+        int unmarked = 0, count = 0;
+        var hashes = new int[network.processes.size()];
+        for (var entry : network.processes.entrySet()){
+            ProcessTerm term = entry.getValue();
+            if (term.isTerminated())
+                continue;
+            int hash = term.hashCode();
+            hashes[count++] = hash;
+            multisetHigh += mixHigh(hash);
+            multisetLow += mixLow(hash);
+            if (!marking.isMarked(entry.getKey()))
+                unmarked++;
+        }
+        //Equal hashes are next to each other once sorted, and only the first of them is added to the key
+        Arrays.sort(hashes, 0, count);
+        for (int i = 0; i < count; i++){
+            if (i == 0 || hashes[i] != hashes[i - 1]){
+                keyHigh += mixHigh(hashes[i]);
+                keyLow += mixLow(hashes[i]);
+            }
+        }
+        return new NetworkFingerprint(new Key(keyHigh, keyLow), multisetHigh, multisetLow, unmarked);
+    }
+
+    /**
+     * Returns true if both fingerprints have the same multiset of process terms, meaning there may be a
+     * bijective mapping between the processes of their networks.
+     */
+    boolean sameMultiset(NetworkFingerprint other){
+        return multisetHigh == other.multisetHigh && multisetLow == other.multisetLow;
+    }
+
+    //Finalizers from SplitMix64, seeded differently for each half of the fingerprint
+    private static long mixHigh(int hash){
+        return mix(hash * 0x9E3779B97F4A7C15L);
+    }
+    private static long mixLow(int hash){
+        return mix((hash ^ 0x5DEECE66DL) * 0xC2B2AE3D27D4EB4FL);
+    }
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
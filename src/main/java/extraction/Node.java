@@ -2,7 +2,6 @@ package extraction;
 
 import extraction.network.Network;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -27,12 +26,14 @@ public interface Node {
 */
     class ConcreteNode implements Node{
         public Network network;
-        public String choicePath;
+        public ChoicePath choicePath;
         public int ID;
         public int flipCounter;
-        public HashMap<String, Boolean> marking;
+        public Marking marking;
+        NetworkFingerprint fingerprint;     //Set by GraphBuilder when the node is added to the graph
+        ReadySet readySet;                  //Set by GraphBuilder when the node is created
 
-        public ConcreteNode(Network network, String choicePath, int ID, int flipCounter, HashMap<String, Boolean> marking){
+        public ConcreteNode(Network network, ChoicePath choicePath, int ID, int flipCounter, Marking marking){
             this.network = network;
             this.choicePath = choicePath;
             this.ID = ID;
@@ -44,7 +45,10 @@ public interface Node {
             return network.toPrettyString();
         }
         public ConcreteNode copy(){
-            return new ConcreteNode(network, choicePath, ID, flipCounter, marking);
+            var copy = new ConcreteNode(network, choicePath, ID, flipCounter, marking);
+            copy.fingerprint = fingerprint;
+            copy.readySet = readySet;
+            return copy;
         }
 
         /*@Override
@@ -0,0 +1,50 @@
+package extraction;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Symbol table giving each process name of an extraction a small integer ID, such that sets of processes
+ * can be stored as bits. IDs are given in the order names are first looked up, and are never reused.<br>
+ * Builders of speculative branches share the table of the builder they branch from, and may add
+ * the names of spawned processes from different threads.
+ */
+final class ProcessNames {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];   //Indexed by ID
+    private int size = 0;
+
+    /**
+     * @return The ID of the process name. If the name has no ID, it is given the next free one.
+     */
+    int id(String name){
+        Integer id = ids.get(name);
+        if (id != null)
+            return id;
+        synchronized (this){
+            id = ids.get(name);
+            if (id == null){
+                id = size++;
+                if (id == names.length)
+                    names = Arrays.copyOf(names, names.length * 2);
+                names[id] = name;
+                ids.put(name, id);      //Published after the name is stored, so name(id) can always find it
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @return The ID of the process name, or -1 if the name has no ID.
+     */
+    int find(String name){
+        return ids.getOrDefault(name, -1);
+    }
+
+    /**
+     * @return The process name of an ID returned by id(String).
+     */
+    String name(int id){
+        return names[id];
+    }
+}
@@ -2,17 +2,16 @@ package extraction;
 
 import extraction.Node.ConcreteNode;
 import extraction.network.Network;
-import extraction.network.ProcessTerm;
 import extraction.network.Network.Advancement;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
- * Searches for ways to advance the network of a ConcreteNode, then
- * makes GraphBuilder attempt building its SEG on that advancement.
+ * Searches for ways to advance the network of a ConcreteNode, which GraphBuilder then
+ * attempts building its SEG on.
  * If GraphBuilder finds that the new network creates an invalid loops,
  * Prospector will try to find another advancement.
  * The advancement is found by looking through the processes of the network
@@ -22,135 +21,119 @@ import java.util.function.Function;
  */
 public class Prospector {
     private final Strategy strategy;
-    private final GraphBuilder builder;
     public boolean disableMulticom = false;
-    Prospector(Strategy extractionStrategy, GraphBuilder builder){
+    Prospector(Strategy extractionStrategy){
         strategy = extractionStrategy;
-        this.builder = builder;
     }
 
     /**
-     * Searches for ways to advance the Network of currentNode, then makes BuildGraph try
-     * build its SEG using the advanced network.
-     * The Network of currentNode will remain unchanged by this function.
+     * Starts searching for ways to advance the Network of currentNode.
+     * The Network of currentNode will remain unchanged by the returned object.
      * @param currentNode The node containing the Network to try and advance.
-     * @return OK if this branch of the SEG is complete, or FAIL if the network is not extractable.
+     * @return An object that produces the advancements of the network one at a time.
      */
-    BuildGraphResult prospect(ConcreteNode currentNode){
-
-        //Create advancer to manage datastructures, testing, and SEG building
-        var advancer = new NetworkAdvancer(currentNode);
-        //Reference to the internal Network of the advancer (which is a copy of that in currentNode).
-        Network network = advancer.network;
-
-        //Try advancing with interactions or conditionals
-        BuildGraphResult result = advancer.advanceNetwork(advancer.network::CommunicationConditionalAdvance);
-        if (result != null)
-            return result;
+    Prospection prospect(ConcreteNode currentNode){
+        return new Prospection(currentNode);
+    }
 
-        //Try advancing with multicom interactions (if enabled)
-        //Assumes no single communications are possible
-        if (!disableMulticom) {
-            result = advancer.advanceNetwork(advancer.network::multicomAdvance);
-            if (result != null)
-                return result;
+    /**
+     * The state of searching for advancements of a single node.
+     * Advancements are tried in the following order: interactions or conditionals, multicom interactions
+     * (if enabled, assuming no single communications are possible), and lastly spawning new processes.
+     * Spawning must be last, to prevent generating infinite SEGs under certain strategies.
+     * Within each kind, the processes are tried in the order given by the extraction strategy.
+     * Processes that the ReadySet of the node rules out for a kind of advancement are skipped.
+     */
+    class Prospection {
+        //advance returns null, and leaves the network unchanged, if the process cannot advance it that way
+        private record Kind(Function<String, Advancement> advance, Predicate<String> mayAdvance){}
+        private final NetworkAdvancer advancer;
+        private final List<Kind> kinds;
+        private int kind = 0;
+        private Iterator<String> processNames;
+
+        private Prospection(ConcreteNode currentNode){
+            //Create advancer to manage datastructures and testing
+            advancer = new NetworkAdvancer(currentNode);
+            //The advancing functions are from the internal Network of the advancer (which is a copy of that in currentNode).
+            Network network = advancer.network;
+            ReadySet ready = currentNode.readySet;
+            var interactions = new Kind(network::CommunicationConditionalAdvance, ready::mayInteractOrBranch);
+            var multicom = new Kind(network::multicomAdvance, ready::maySendMulticom);
+            var spawns = new Kind(network::spawnAdvance, ready::maySpawn);
+            kinds = disableMulticom ? List.of(interactions, spawns) : List.of(interactions, multicom, spawns);
+            processNames = advancer.orderedProcesses.iterator();
         }
 
-        //Try advancing by spawning a new process
-        //Must be last, to prevent generating infinite SEGs under certain strategies.
-        result = advancer.advanceNetwork(advancer.network::spawnAdvance);
-        if (result != null)
-            return result;
-
-        if (advancer.network.allTerminated())
-            return BuildGraphResult.OK;
+        /**
+         * Finds the next way to advance the network. If the previously returned advancement formed a bad loop,
+         * badLoop() must be called before calling this function again.
+         * @return The next advancement to build the SEG on, or null if there are no more advancements.
+         */
+        Advancement next(){
+            while (kind < kinds.size()){
+                Kind current = kinds.get(kind);
+                while (processNames.hasNext()){
+                    String processName = processNames.next();
+                    if (!current.mayAdvance().test(processName))
+                        continue;
+                    //Try to advance the Network by reducing the chosen process.
+                    Advancement advancement = current.advance().apply(processName);
+                    //If the chosen process could not reduce the network, try the next one
+                    if (advancement != null)
+                        return advancement;
+                }
+                //No process could advance the Network this way. Try the next kind of advancement
+                kind++;
+                processNames = advancer.orderedProcesses.iterator();
+            }
+            return null;
+        }
 
-        return BuildGraphResult.FAIL;
+        /**
+         * Resets the changes the last advancement made to the Network, such that the next one can be tried.
+         * Should be called when building the SEG from that advancement resulted in a bad loop,
+         * in which case the graph remains unchanged.
+         */
+        void badLoop(){
+            advancer.restore();
+        }
 
+        /**
+         * @return The result of prospecting once there are no more advancements: OK if all processes has
+         * terminated, and FAIL otherwise, as the network is then not extractable.
+         */
+        BuildGraphResult exhausted(){
+            return advancer.network.allTerminated() ? BuildGraphResult.OK : BuildGraphResult.FAIL;
+        }
     }
 
     private class NetworkAdvancer{
-        private final ConcreteNode currentNode;
         private final Network network;
-        private final HashMap<String, ProcessTerm> foldedProcesses;
-        private final LinkedHashMap<String, ProcessTerm> orderedProcesses;
+        private final List<String> orderedProcesses;
 
         /**
          * Construct a helper object to assist in prospecting for viable advancements in a Network.
-         * Takes care of internal bookkeeping and temporary data structures
+         * Takes care of internal bookkeeping and temporary data structures.
+         * The network is not unfolded. The advancing functions of Network unfold the processes they look at
+         * without changing them, and only the actors of an advancement are unfolded in its network, so the
+         * processes that do not act keep their procedure invocations, and need not be folded back.
          * @param currentNode The node to copy data from, including the internal Network instance.
          */
         NetworkAdvancer(ConcreteNode currentNode){
-            this.currentNode = currentNode;                     //Keep for when expanding the SEG
-            network = currentNode.network.copy();               //Work on copy
-            foldedProcesses = network.unfold();                 //Unfold procedures
+            network = currentNode.network.workingCopy();        //Work on copy, which can undo its changes
+            currentNode.readySet.update(network);               //Index the processes changed by the last advancement
             ConcreteNode unfoldedNode = currentNode.copy();     //Create temp copy with unfolded network
-            unfoldedNode.network = network;
-            orderedProcesses = copyAndSortProcesses(unfoldedNode);  //Sort based on strategy
+            unfoldedNode.network = network.unfoldedView();
+            orderedProcesses = strategy.order(unfoldedNode);    //Sort based on strategy
         }
 
         /**
-         * Attempts to advance the internally stored Network using the provided function.
-         * @param tryAdvancement A function that attempts to advance the Network. It must take a process name as
-         *                       parameter, which will be the bases of reducing/advancing the network.
-         *                       The function must be from the internally stored Network instance.
-         * @return OK if the network advanced, and the SEG successfully expanded, FAIL if the network is not
-         * extractable, or null if no advancement was made, in which case the network is unmodified.
-         */
-        BuildGraphResult advanceNetwork(Function<String, Advancement> tryAdvancement){
-            for (var processName : orderedProcesses.keySet()){
-                //Try to advance the Network by reducing the chosen process.
-                Advancement advancement = tryAdvancement.apply(processName);
-                //If the chosen process could not reduce the network, try the next one
-                if (advancement == null)
-                    continue;
-
-                //Fold back procedure invocations of unused processes.
-                foldBackProcesses(advancement, foldedProcesses);
-
-                //Build out the graph using the progress of the network
-                BuildGraphResult result = builder.buildGraph(advancement, currentNode);
-
-                //In case of bad loops, the graph remains unchanged.
-                // Reset changes to the Network, and try the next process
-                if (result == BuildGraphResult.BAD_LOOP) {
-                    network.restoreProcesses(orderedProcesses, foldedProcesses.keySet()); //Unfold again
-                    network.restoreProcesses(orderedProcesses, advancement.actors());       //Restore modified processes
-                    continue;
-                }
-
-                //Return the result of building the graph.
-                //Will either be OK on success, or FAIL if the network is not extractable
-                return result;
-                
-            }
-            //The tryAdvancement function could not advance the Network.
-            return null;
-        }
-        /**
-         * Folds back the main Behaviour of all Networks in an Advancement, if they did not reduce.
-         * @param advancement Container for the Network(s) to fold back.
-         * @param foldedProcesses Copy of the ProcessTerm that was unfolded.
+         * Reset changes to the Network done by the last advancement
          */
-        private void foldBackProcesses(Advancement advancement,
-                                       HashMap<String, ProcessTerm> foldedProcesses){
-            HashSet<String> involvedProcesses = advancement.actors();
-            advancement.network().restoreExcept(foldedProcesses, involvedProcesses);
-            if (advancement.elseNetwork() != null)
-                advancement.elseNetwork().restoreExcept(foldedProcesses, involvedProcesses);
+        void restore(){
+            network.rollback();
         }
     }
 
-    /**
-     * Returns an ordered HashMap of the processes of the Network in the node, sorted after the strategy this
-     * GraphBuilder uses, such that higher priority ProcessTerms are earlier in the HashMap.
-     * The ProcessTerms in the HashMap are copies of the original, so changes to the elements in the original
-     * HashMap do not affect the copy and vice versa.
-     * @param node The node containing the Network with a list of ProcessTerms to be sorted
-     * @return An ordered HashMap sorted after this instances extraction strategy.
-     */
-    private LinkedHashMap<String, ProcessTerm> copyAndSortProcesses(Node.ConcreteNode node){
-        return strategy.copyAndSort(node);
-    }
-
 }
@@ -0,0 +1,190 @@
+package extraction;
+
+import extraction.network.Behaviour;
+import extraction.network.Condition;
+import extraction.network.Network;
+import extraction.network.ProcessTerm;
+import extraction.network.Spawn;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Index of the processes of a node in the SEG that may be able to advance its network, and how, such that
+ * the Prospector only tries to advance on those. The index is of the network where procedure invocations are
+ * unfolded. It tells which processes send to a process that receives from them, which are conditionals,
+ * which are spawns, and which send at all (and so may start a multicom).<br>
+ * Advancing a network only changes the processes that acted, so the index of a new node is a copy of the index
+ * of the node it advanced from, where the actors are stale. Stale entries are updated when the node is prospected,
+ * together with the senders whose partner is one of the actors. Processes are stored as bits and entries indexed
+ * by the IDs of a ProcessNames table.
+ */
+final class ReadySet {
+    private static final byte OTHER = 0, SENDER = 1, RECEIVER = 2;
+    private final ProcessNames names;
+    private byte[] kinds;               //Whether process ID i is a sender, receiver, or neither
+    private int[] partners;             //ID of the process i sends to or receives from, or -1
+    private long[] interactions;        //Bit i is set if process i sends to a process receiving from i
+    private long[] senders;             //Bit i is set if process i sends, which multicom must start from
+    private long[] conditions;          //Bit i is set if process i is a conditional
+    private long[] spawns;              //Bit i is set if process i spawns a process
+    private long[] stale;               //Bit i is set if the entries of process i must be updated
+
+    private ReadySet(ProcessNames names){
+        this.names = names;
+        kinds = new byte[64];
+        partners = new int[64];
+        Arrays.fill(partners, -1);
+        interactions = new long[1];
+        senders = new long[1];
+        conditions = new long[1];
+        spawns = new long[1];
+        stale = new long[1];
+    }
+
+    private ReadySet(ReadySet other){
+        names = other.names;
+        kinds = other.kinds.clone();
+        partners = other.partners.clone();
+        interactions = other.interactions.clone();
+        senders = other.senders.clone();
+        conditions = other.conditions.clone();
+        spawns = other.spawns.clone();
+        stale = other.stale.clone();
+    }
+
+    /**
+     * @return An index of the provided processes, where every entry is stale.
+     */
+    static ReadySet of(ProcessNames names, Collection<String> processes){
+        var readySet = new ReadySet(names);
+        readySet.markStale(processes);
+        return readySet;
+    }
+
+    /**
+     * @return A copy of this index for a node advanced from this one, where the actors of the advancement are stale.
+     */
+    ReadySet child(Collection<String> actors){
+        var child = new ReadySet(this);
+        child.markStale(actors);
+        return child;
+    }
+
+    private void markStale(Collection<String> processes){
+        for (String process : processes){
+            int id = names.id(process);
+            ensureCapacity(id);
+            stale[id >>> 6] |= 1L << id;
+        }
+    }
+
+    /**
+     * Updates the stale entries from the network of the node. Senders to and from the stale processes are
+     * updated as well.
+     */
+    void update(Network network){
+        long[] affected = new long[stale.length];   //Senders whose interaction bit may have changed
+        for (int word = 0; word < stale.length; word++){
+            long bits = stale[word];
+            while (bits != 0){
+                int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                //The sender a receiver received from may no longer have a partner to interact with
+                if (kinds[id] == RECEIVER)
+                    setBit(affected, partners[id]);
+                index(id, network.processes.get(names.name(id)));
+                setBit(affected, kinds[id] == RECEIVER ? partners[id] : id);
+            }
+            stale[word] = 0;
+        }
+        for (int word = 0; word < affected.length; word++){
+            long bits = affected[word];
+            while (bits != 0){
+                int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int partner = partners[id];
+                boolean ready = kinds[id] == SENDER && partner != -1 && partner < kinds.length &&
+                        kinds[partner] == RECEIVER && partners[partner] == id;
+                setBit(interactions, id, ready);
+            }
+        }
+    }
+
+    /**
+     * Sets the kind, partner and bits of a process from its term, as it is after unfolding.
+     */
+    private void index(int id, ProcessTerm term){
+        if (term != null)
+            term = term.unfolded();
+        Behaviour main = term == null ? null : term.rawMain();
+        kinds[id] = OTHER;
+        partners[id] = -1;
+        if (main instanceof Behaviour.Sender sender){
+            kinds[id] = SENDER;
+            partners[id] = names.find(term.getVariables().get(sender.receiver));
+        }
+        else if (main instanceof Behaviour.Receiver receiver){
+            kinds[id] = RECEIVER;
+            partners[id] = names.find(term.getVariables().get(receiver.sender));
+        }
+        setBit(senders, id, kinds[id] == SENDER);
+        setBit(conditions, id, main instanceof Condition);
+        setBit(spawns, id, main instanceof Spawn);
+    }
+
+    /**
+     * @return true if the process may reduce together with the process it sends to, or is a conditional.
+     * Network.CommunicationConditionalAdvance() fails for all other processes.
+     */
+    boolean mayInteractOrBranch(String process){
+        int id = names.find(process);
+        return isSet(interactions, id) || isSet(conditions, id);
+    }
+
+    /**
+     * @return true if the process sends. Network.multicomAdvance() fails for all other processes.
+     */
+    boolean maySendMulticom(String process){
+        return isSet(senders, names.find(process));
+    }
+
+    /**
+     * @return true if the process spawns. Network.spawnAdvance() fails for all other processes.
+     */
+    boolean maySpawn(String process){
+        return isSet(spawns, names.find(process));
+    }
+
+    private void ensureCapacity(int id){
+        int word = id >>> 6;
+        if (word < stale.length)
+            return;
+        int length = Math.max(stale.length * 2, word + 1);
+        kinds = Arrays.copyOf(kinds, length << 6);
+        int oldSize = partners.length;
+        partners = Arrays.copyOf(partners, length << 6);
+        Arrays.fill(partners, oldSize, partners.length, -1);
+        interactions = Arrays.copyOf(interactions, length);
+        senders = Arrays.copyOf(senders, length);
+        conditions = Arrays.copyOf(conditions, length);
+        spawns = Arrays.copyOf(spawns, length);
+        stale = Arrays.copyOf(stale, length);
+    }
+
+    private static boolean isSet(long[] bits, int id){
+        return id != -1 && (id >>> 6) < bits.length && (bits[id >>> 6] & 1L << id) != 0;
+    }
+
+    private static void setBit(long[] bits, int id){
+        if (id != -1 && (id >>> 6) < bits.length)
+            bits[id >>> 6] |= 1L << id;
+    }
+
+    private static void setBit(long[] bits, int id, boolean value){
+        if (value)
+            bits[id >>> 6] |= 1L << id;
+        else
+            bits[id >>> 6] &= ~(1L << id);
+    }
+}
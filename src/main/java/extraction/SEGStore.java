@@ -0,0 +1,155 @@
+package extraction;
+
+import extraction.Node.ConcreteNode;
+import org.jgrapht.graph.DirectedPseudograph;
+
+import java.util.Arrays;
+
+/**
+ * The Symbolic Execution Graph (SEG) as it is being build by GraphBuilder.<br>
+ * Nodes are stored in an array indexed by their ID, and edges in arrays indexed by the order they were added in.
+ * A node has at most two outgoing edges, one for most actions, and two for conditionals. The incoming
+ * edges of a node are kept as a linked list through the edge arrays, so removing a node also removes
+ * the edges going to it.<br>
+ * Nodes must be added in the order of their IDs, so that the jgrapht graphs made from the store has
+ * the same vertex and edge order as if the SEG had been build as a jgrapht graph directly.
+ */
+public class SEGStore {
+    private static final int NONE = -1;
+
+    //Nodes, indexed by ID
+    private ConcreteNode[] nodes = new ConcreteNode[16];
+    private int[] firstOut = new int[16], secondOut = new int[16];  //Outgoing edges, or NONE
+    private int[] firstIn = new int[16];                            //Head of the list of incoming edges, or NONE
+    private int nodeCount = 0;
+
+    //Edges, indexed in the order they were added. Removed edges have a null label.
+    private int[] source = new int[32], target = new int[32];
+    private int[] nextIn = new int[32];                             //Next edge into the same target, or NONE
+    private Label[] labels = new Label[32];
+    private int edgeCount = 0;
+
+    private volatile DirectedPseudograph<Node, Label> view = null;
+
+    /**
+     * @return The number of nodes in the graph.
+     */
+    public int nodeCount(){
+        return nodeCount;
+    }
+
+    void addVertex(ConcreteNode node){
+        int id = node.ID;
+        if (id >= nodes.length){
+            int capacity = Math.max(nodes.length * 2, id + 1);
+            nodes = Arrays.copyOf(nodes, capacity);
+            firstOut = Arrays.copyOf(firstOut, capacity);
+            secondOut = Arrays.copyOf(secondOut, capacity);
+            firstIn = Arrays.copyOf(firstIn, capacity);
+        }
+        nodes[id] = node;
+        firstOut[id] = secondOut[id] = firstIn[id] = NONE;
+        nodeCount++;
+    }
+
+    void addEdge(ConcreteNode sourceNode, ConcreteNode targetNode, Label label){
+        int from = sourceNode.ID, to = targetNode.ID;
+        if (edgeCount == labels.length){
+            int capacity = labels.length * 2;
+            source = Arrays.copyOf(source, capacity);
+            target = Arrays.copyOf(target, capacity);
+            nextIn = Arrays.copyOf(nextIn, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+        }
+        int edge = edgeCount++;
+        if (firstOut[from] == NONE)
+            firstOut[from] = edge;
+        else if (secondOut[from] == NONE)
+            secondOut[from] = edge;
+        else
+            throw new IllegalStateException("Bad graph. A node has more than 2 outgoing edges.");
+        source[edge] = from;
+        target[edge] = to;
+        labels[edge] = label;
+        nextIn[edge] = firstIn[to];
+        firstIn[to] = edge;
+    }
+
+    /**
+     * Removes the node, and all edges going to or from it.
+     */
+    void removeVertex(ConcreteNode node){
+        int id = node.ID;
+        if (firstOut[id] != NONE)
+            removeEdge(firstOut[id]);
+        if (secondOut[id] != NONE)
+            removeEdge(secondOut[id]);
+        while (firstIn[id] != NONE)
+            removeEdge(firstIn[id]);
+        nodes[id] = null;
+        nodeCount--;
+    }
+
+    /**
+     * Removes the earliest added edge from sourceNode to targetNode, if any.
+     */
+    void removeEdge(ConcreteNode sourceNode, ConcreteNode targetNode){
+        int first = firstOut[sourceNode.ID], second = secondOut[sourceNode.ID];
+        boolean firstMatches = first != NONE && target[first] == targetNode.ID;
+        boolean secondMatches = second != NONE && target[second] == targetNode.ID;
+        if (firstMatches && (!secondMatches || first < second))
+            removeEdge(first);
+        else if (secondMatches)
+            removeEdge(second);
+    }
+
+    private void removeEdge(int edge){
+        int from = source[edge], to = target[edge];
+        if (firstOut[from] == edge)
+            firstOut[from] = NONE;
+        else
+            secondOut[from] = NONE;
+        if (firstIn[to] == edge)
+            firstIn[to] = nextIn[edge];
+        else {
+            int previous = firstIn[to];
+            while (nextIn[previous] != edge)
+                previous = nextIn[previous];
+            nextIn[previous] = nextIn[edge];
+        }
+        labels[edge] = null;
+    }
+
+    /**
+     * Creates a jgrapht graph with the nodes and edges of this store. The graph can be modified freely,
+     * such as by ChoreographyBuilder unrolling it.
+     */
+    DirectedPseudograph<Node, Label> toGraph(){
+        var graph = new DirectedPseudograph<Node, Label>(Label.class);
+        for (var node : nodes){
+            if (node != null)
+                graph.addVertex(node);
+        }
+        for (int edge = 0; edge < edgeCount; edge++){
+            if (labels[edge] != null)
+                graph.addEdge(nodes[source[edge]], nodes[target[edge]], labels[edge]);
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the SEG as a jgrapht graph. The graph is created the first time it is requested, and is shared
+     * by all callers, so it must not be modified. The store must not be changed after the graph is created.
+     */
+    public DirectedPseudograph<Node, Label> asGraph(){
+        var graph = view;
+        if (graph == null){
+            synchronized (this){
+                if (view == null)
+                    view = toGraph();
+                graph = view;
+            }
+        }
+        return graph;
+    }
+}
@@ -5,16 +5,16 @@ import extraction.network.*;
 import java.util.*;
 
 /**
- * This enum class contains different implementations of copyAndSort() which takes a network
- * in the form of a HashMap, and returns a HashMap that is sorted according to a specific
- * strategy. The returned HashMap is a LinkedHashMap, as that retains the order that values
- * are put into it.
+ * This enum class contains different implementations of order() which takes a node, and returns
+ * the names of the processes in its network, sorted according to a specific strategy.
+ * Processes earlier in the list are tried first when advancing the network.
+ * The network is only inspected, so no ProcessTerms are copied.
  */
 public enum Strategy {
     Default {
         @Override
-        public LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node) {
-            return InteractionsFirst.copyAndSort(node);
+        public List<String> order(Node.ConcreteNode node) {
+            return InteractionsFirst.order(node);
         }
     },
     /**
@@ -23,97 +23,92 @@ public enum Strategy {
      */
     InteractionsFirst {
         @Override
-        public LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node) {
+        public List<String> order(Node.ConcreteNode node) {
             var network = node.network.processes;
-            LinkedHashMap<String, ProcessTerm> sortedNetwork = new LinkedHashMap<>(network.size());
+            var senders = new ArrayList<String>(network.size());
+            var others = new ArrayList<String>();
 
             network.forEach((String processName, ProcessTerm process) -> {
                 /*if (process.runtimeMain() instanceof Send
                 || process.runtimeMain() instanceof Receive
                 || process.runtimeMain() instanceof Selection
                 || process.runtimeMain() instanceof Offering){*/
-                if (process.rawMain() instanceof Behaviour.Sender){
-                    sortedNetwork.put(processName, process.copy());
-                }
-            });
-
-            network.forEach((String processName, ProcessTerm process) -> {
-                if (!sortedNetwork.containsKey(processName)){
-                    sortedNetwork.put(processName, process.copy());
-                }
+                if (process.rawMain() instanceof Behaviour.Sender)
+                    senders.add(processName);
+                else
+                    others.add(processName);
             });
 
-            return sortedNetwork;
+            senders.addAll(others);
+            return senders;
         }
     },
 
     ConditionsFirst{
         @Override
-        public LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node) {
+        public List<String> order(Node.ConcreteNode node) {
             var network = node.network.processes;
-            var sortedNetwork = new LinkedHashMap<String, ProcessTerm>(network.size());
+            var conditions = new ArrayList<String>(network.size());
+            var selections = new ArrayList<String>();
+            var others = new ArrayList<String>();
 
             network.forEach((processName, processTerm) ->{
-                if (processTerm.runtimeMain() instanceof Condition)
-                    sortedNetwork.put(processName, processTerm.copy());
-            });
-            network.forEach((processName, processTerm) -> {
-                if (processTerm.runtimeMain() instanceof Selection || processTerm.runtimeMain() instanceof Offering)
-                    sortedNetwork.put(processName, processTerm.copy());
-            });
-            network.forEach((processName, processTerm) -> {
-                if (!sortedNetwork.containsKey(processName))
-                    sortedNetwork.put(processName, processTerm.copy());
+                Behaviour main = processTerm.rawMain();
+                if (main instanceof Condition)
+                    conditions.add(processName);
+                else if (main instanceof Selection || main instanceof Offering)
+                    selections.add(processName);
+                else
+                    others.add(processName);
             });
 
-            return sortedNetwork;
+            conditions.addAll(selections);
+            conditions.addAll(others);
+            return conditions;
         }
     },
 
     UnmarkedFirst{
         @Override
-        public LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node) {
+        public List<String> order(Node.ConcreteNode node) {
             var network = node.network.processes;
-            var sortedNetwork = new LinkedHashMap<String, ProcessTerm>(network.size());
+            var unmarked = new ArrayList<String>(network.size());
+            var marked = new ArrayList<String>();
 
             network.forEach((processName, processTerm) -> {
-                if (!node.marking.containsKey(processName))
-                    sortedNetwork.put(processName, processTerm.copy());
-            });
-            network.forEach((processName, processTerm) -> {
-                if (node.marking.containsKey(processName))
-                    sortedNetwork.put(processName, processTerm.copy());
+                if (node.marking.contains(processName))
+                    marked.add(processName);
+                else
+                    unmarked.add(processName);
             });
 
-            return sortedNetwork;
+            unmarked.addAll(marked);
+            return unmarked;
         }
     },
 
     UnmarkedThenInteractions{
         @Override
-        public LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node) {
+        public List<String> order(Node.ConcreteNode node) {
             var processes = node.network.processes;
-            var sortedProcesses = new LinkedHashMap<String, ProcessTerm>(processes.size());
 
             var markedList = new ArrayList<String>();
-            var unmarkedInteractionsList = new ArrayList<String>();
+            var unmarkedInteractionsList = new ArrayList<String>(processes.size());
             var unmarkedOthersList = new ArrayList<String>();
 
-            node.marking.forEach((processName, marking) -> {
-                if (marking)
+            node.marking.forEach((processName, marked) -> {
+                if (marked)
                     markedList.add(processName);
                 else
-                    if (isInteraction(node.network.processes.get(processName).runtimeMain()))
+                    if (isInteraction(processes.get(processName).rawMain()))
                         unmarkedInteractionsList.add(processName);
                     else
                         unmarkedOthersList.add(processName);
             });
 
-            unmarkedInteractionsList.forEach(processName -> sortedProcesses.put(processName, processes.get(processName).copy()));
-            unmarkedOthersList.forEach(processName -> sortedProcesses.put(processName, processes.get(processName).copy()));
-            markedList.forEach(processName -> sortedProcesses.put(processName, processes.get(processName).copy()));
-
-            return sortedProcesses;
+            unmarkedInteractionsList.addAll(unmarkedOthersList);
+            unmarkedInteractionsList.addAll(markedList);
+            return unmarkedInteractionsList;
         }
         private boolean isInteraction(Behaviour b){
             return b instanceof Behaviour.Interaction;
@@ -122,48 +117,33 @@ public enum Strategy {
 
     Random{
         @Override
-        public LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node) {
-            var processes = node.network.processes;
-            var sortedProcesses = new LinkedHashMap<String, ProcessTerm>();
-            var processNames = new ArrayList<>(processes.keySet());
+        public List<String> order(Node.ConcreteNode node) {
+            var processNames = new ArrayList<>(node.network.processes.keySet());
             Collections.shuffle(processNames);
-            processNames.forEach(processName -> sortedProcesses.put(processName, processes.get(processName).copy()));
-            return sortedProcesses;
+            return processNames;
         }
     },
 
     LongestFirst{
         @Override
-        public LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node) {
-            var sortedProcesses = new LinkedHashMap<String, ProcessTerm>();
-            var processList = new ArrayList<>(node.network.processes.entrySet());
-            processList.sort(new SortByLength());
-            Collections.reverse(processList);
-
-            processList.forEach((entry) -> sortedProcesses.put(entry.getKey(), entry.getValue()));
-            return sortedProcesses;
+        public List<String> order(Node.ConcreteNode node) {
+            var processNames = sortByLength(node.network.processes);
+            Collections.reverse(processNames);
+            return processNames;
         }
     },
     ShortestFirst{
         @Override
-        public LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node) {
-            var sortedProcesses = new LinkedHashMap<String, ProcessTerm>();
-            var processList = new ArrayList<>(node.network.processes.entrySet());
-            processList.sort(new SortByLength());
-
-            processList.forEach((entry) -> sortedProcesses.put(entry.getKey(), entry.getValue()));
-            return sortedProcesses;
+        public List<String> order(Node.ConcreteNode node) {
+            return sortByLength(node.network.processes);
         }
     },
 
     UnmarkedThenRandom{
         @Override
-        public LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node) {
-            var processes = node.network.processes;
-            var sortedProcesses = new LinkedHashMap<String, ProcessTerm>();
-
+        public List<String> order(Node.ConcreteNode node) {
             var markedList = new ArrayList<String>();
-            var unmarkedList = new ArrayList<String>();
+            var unmarkedList = new ArrayList<String>(node.network.processes.size());
 
             node.marking.forEach((processName, marked) -> {
                 if (marked)
@@ -175,28 +155,25 @@ public enum Strategy {
             Collections.shuffle(unmarkedList);
             Collections.shuffle(markedList);
 
-            unmarkedList.forEach(processName -> sortedProcesses.put(processName, processes.get(processName).copy()));
-            markedList.forEach(processName -> sortedProcesses.put(processName, processes.get(processName).copy()));
-
-            return sortedProcesses;
+            unmarkedList.addAll(markedList);
+            return unmarkedList;
         }
     },
 
     UnmarkedThenSelections {
         @Override
-        public LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node) {
+        public List<String> order(Node.ConcreteNode node) {
             var processes = node.network.processes;
-            var sortedProcesses = new LinkedHashMap<String, ProcessTerm>();
 
             var markedSelections = new ArrayList<String>();
-            var unmarkedSelections = new ArrayList<String>();
+            var unmarkedSelections = new ArrayList<String>(processes.size());
             var markedSending = new ArrayList<String>();
             var unmarkedSending = new ArrayList<String>();
             var markedElse = new ArrayList<String>();
             var unmarkedElse = new ArrayList<String>();
 
             node.marking.forEach((processName, marked) -> {
-                Behaviour main = node.network.processes.get(processName).runtimeMain();
+                Behaviour main = processes.get(processName).rawMain();
                 if (main instanceof Selection || main instanceof Offering) {
                     if (marked)
                         markedSelections.add(processName);
@@ -218,32 +195,29 @@ public enum Strategy {
 
             });
 
-            copyProcesses(unmarkedSelections, processes, sortedProcesses);
-            copyProcesses(unmarkedSending, processes, sortedProcesses);
-            copyProcesses(unmarkedElse, processes, sortedProcesses);
-            copyProcesses(markedSelections, processes, sortedProcesses);
-            copyProcesses(markedSending, processes, sortedProcesses);
-            copyProcesses(markedElse, processes, sortedProcesses);
-
-            return sortedProcesses;
+            unmarkedSelections.addAll(unmarkedSending);
+            unmarkedSelections.addAll(unmarkedElse);
+            unmarkedSelections.addAll(markedSelections);
+            unmarkedSelections.addAll(markedSending);
+            unmarkedSelections.addAll(markedElse);
+            return unmarkedSelections;
         }
     },
 
     UnmarkedThenConditions {
         @Override
-        public LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node) {
+        public List<String> order(Node.ConcreteNode node) {
             var processes = node.network.processes;
-            var sortedProcesses = new LinkedHashMap<String, ProcessTerm>();
 
             var markedConditions = new ArrayList<String>();
-            var unmarkedConditions = new ArrayList<String>();
+            var unmarkedConditions = new ArrayList<String>(processes.size());
             var markedSelections = new ArrayList<String>();
             var unmarkedSelections = new ArrayList<String>();
             var markedElse = new ArrayList<String>();
             var unmarkedElse = new ArrayList<String>();
 
             node.marking.forEach((processName, marked) -> {
-                Behaviour main = node.network.processes.get(processName).runtimeMain();
+                Behaviour main = processes.get(processName).rawMain();
                 if (main instanceof Condition) {
                     if (marked)
                         markedConditions.add(processName);
@@ -264,29 +238,37 @@ public enum Strategy {
                 }
             });
 
-            copyProcesses(unmarkedConditions, processes, sortedProcesses);
-            copyProcesses(unmarkedSelections, processes, sortedProcesses);
-            copyProcesses(unmarkedElse, processes, sortedProcesses);
-            copyProcesses(markedConditions, processes, sortedProcesses);
-            copyProcesses(markedSelections, processes, sortedProcesses);
-            copyProcesses(markedElse, processes, sortedProcesses);
-
-            return sortedProcesses;
+            unmarkedConditions.addAll(unmarkedSelections);
+            unmarkedConditions.addAll(unmarkedElse);
+            unmarkedConditions.addAll(markedConditions);
+            unmarkedConditions.addAll(markedSelections);
+            unmarkedConditions.addAll(markedElse);
+            return unmarkedConditions;
         }
     };
 
-    private static void copyProcesses(List<String> processNames, HashMap<String, ProcessTerm> processMap, HashMap<String, ProcessTerm> copyMap){
-        processNames.forEach(processName -> copyMap.put(processName, processMap.get(processName).copy()));
-    }
-
-    private static class SortByLength implements Comparator<Map.Entry<String, ProcessTerm>>{
-        @Override
-        public int compare(Map.Entry<String, ProcessTerm> entry1, Map.Entry<String, ProcessTerm> entry2) {
-            String term1 = entry1.getValue().runtimeMain().toString();
-            String term2 = entry2.getValue().runtimeMain().toString();
-            return term1.length() - term2.length();
-        }
+    /**
+     * Returns the process names sorted by the length of their runtime main Behaviour as a string, shortest first.
+     * The sort is stable, so processes of equal length are in the iteration order of the map.
+     * The lengths are calculated once per process, from lengths cached in the Behaviours.
+     */
+    private static ArrayList<String> sortByLength(HashMap<String, ProcessTerm> processes){
+        var processNames = new ArrayList<String>(processes.size());
+        var lengths = new HashMap<String, Integer>(processes.size() * 2);
+        processes.forEach((processName, processTerm) -> {
+            processNames.add(processName);
+            lengths.put(processName, processTerm.runtimeMainLength());
+        });
+        processNames.sort(Comparator.comparingInt(lengths::get));
+        return processNames;
     }
 
-    public abstract LinkedHashMap<String, ProcessTerm> copyAndSort(Node.ConcreteNode node);
-}
\ No newline at end of file
+    /**
+     * Returns the names of the processes in the network of the node, ordered such that the processes
+     * to try advancing first are first in the list. Every process of the network is in the list exactly once.
+     * Implementations must not modify the node or its network.
+     * @param node The node containing the Network whose processes are to be ordered
+     * @return A new list of the process names, which the caller may modify.
+     */
+    public abstract List<String> order(Node.ConcreteNode node);
+}
@@ -2,11 +2,15 @@ package extraction.network;
 
 import extraction.Label;
 
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 public abstract class Behaviour extends NetworkASTNode {
     public final Behaviour continuation;
+    boolean interned = false;   //True if this is the canonical instance held by BehaviourInterner
+    boolean parameterised = false;  //True if interned, and a procedure is invoked with parameters. See equals()
+    volatile UsedVariables.Summary usedVariables = null;    //Calculated by UsedVariables when first needed
+    private int printedLength = -1;     //Length of toString(), calculated when first needed
     public Behaviour(Action action, Behaviour continuation){
         super(action);
         this.continuation = continuation;
@@ -22,7 +26,25 @@ public abstract class Behaviour extends NetworkASTNode {
      * in the Network. Can be achieved by a HashMap where .get(p) = .getOrDefault(p,p)
      * Continuations and other such fields are unaffected.
      */
-    abstract Behaviour realValues(HashMap<String, String> substitutions);
+    abstract Behaviour realValues(Map<String, String> substitutions);
+
+    /**
+     * Returns the length of toString(). Behaviours are immutable, so it is only calculated once.
+     */
+    int printedLength(){
+        int length = printedLength;
+        if (length == -1)
+            printedLength = length = toString().length();
+        return length;
+    }
+
+    /**
+     * Returns the length of realValues(substitutions).toString(), without creating the substituted Behaviour.
+     * Behaviours that substitute process variables must adjust printedLength() for the names they substitute.
+     */
+    int realLength(Map<String, String> substitutions){
+        return printedLength();
+    }
 
     /**
      * Behaviors are expected to overwrite their hashcode
@@ -32,11 +54,26 @@ public abstract class Behaviour extends NetworkASTNode {
     public abstract int hashCode();
 
     /**
-     * Compares fields and nested Behaviours recursively
+     * Compares fields and nested Behaviours recursively.
+     * Interned Behaviours are the same instance exactly when they are structurally identical, so two different
+     * interned instances are not equal, and are not compared further. The exception is procedure invocations,
+     * which are equal regardless of their parameters, but interned separately for each, so Behaviours that
+     * invoke procedures with parameters are compared structurally.
      * @param other Behavior to compare to
      * @return true of the objects are equivalent, false otherwise
      */
-    public abstract boolean equals(Behaviour other);
+    public final boolean equals(Behaviour other){
+        if (this == other)
+            return true;
+        if (interned && other != null && other.interned && !parameterised && !other.parameterised)
+            return false;
+        return equalsStructurally(other);
+    }
+
+    /**
+     * Compares fields and nested Behaviours recursively, without assuming anything about interned instances.
+     */
+    abstract boolean equalsStructurally(Behaviour other);
 
     /**
      * Compare every field that is not a Behaviour between this instance, and other
@@ -45,6 +82,16 @@ public abstract class Behaviour extends NetworkASTNode {
      */
     abstract boolean compareData(Behaviour other);
 
+    /**
+     * Compare every field between this instance and other, where nested Behaviours are compared by reference.
+     * Used by BehaviourInterner, where nested Behaviours are already canonical.
+     * @return true if both objects are the same type of behaviour, with the same fields, and the same
+     * nested Behaviour instances.
+     */
+    boolean shallowEquals(Behaviour other){
+        return compareData(other) && continuation == other.continuation;
+    }
+
     /**
      * Subclasses that extends this class, are Behaviours that perform some interaction between processes.
      */
@@ -77,6 +124,14 @@ public abstract class Behaviour extends NetworkASTNode {
          * @return A new InteractionLabel for the interaction needed to reduce this Behaviour.
          */
         abstract Label.InteractionLabel labelFrom(String process, ProcessTerm.ValueMap substitutions);
+
+        /**
+         * Returns the expression as it would be in the Behaviour returned by realValues(substitutions),
+         * without creating that Behaviour.
+         */
+        String runtimeExpression(Map<String, String> substitutions){
+            return expression;
+        }
     }
 
     /**
@@ -104,7 +159,7 @@ public abstract class Behaviour extends NetworkASTNode {
         }
 
         @Override
-        Behaviour realValues(HashMap<String, String> substitutions) {
+        Behaviour realValues(Map<String, String> substitutions) {
             throw new IllegalCallerException("This is a stand-in Behaviour object, and is supposed to be handled as a special case. Never as a regular behaviour");
         }
 
@@ -114,7 +169,7 @@ public abstract class Behaviour extends NetworkASTNode {
         }
 
         @Override
-        public boolean equals(Behaviour other) {
+        boolean equalsStructurally(Behaviour other) {
             return this == other;   //Constructor is private, so there is only ever one instance
         }
 
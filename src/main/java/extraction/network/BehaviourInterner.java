@@ -0,0 +1,166 @@
+package extraction.network;
+
+import extraction.network.Behaviour.BreakBehaviour;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Global table of canonical Behaviour instances (hash-consing).
+ * Interning a Behaviour returns the single canonical instance that is structurally identical to it,
+ * such that structurally identical subtrees of a network are the same object, and comparing them is
+ * a reference check.
+ * The table only keeps weak references to its entries, so Behaviours that are no longer in use by any
+ * network are garbage collected as usual.
+ */
+public final class BehaviourInterner {
+    private static final HashMap<Integer, ArrayList<Entry>> table = new HashMap<>();
+    private static final ReferenceQueue<Behaviour> collected = new ReferenceQueue<>();
+
+    private static class Entry extends WeakReference<Behaviour>{
+        final int hash;
+        Entry(Behaviour behaviour){
+            super(behaviour, collected);
+            hash = behaviour.hashCode();
+        }
+    }
+
+    private BehaviourInterner(){}
+
+    /**
+     * Returns the canonical instance of the provided Behaviour. Nested Behaviours (continuations,
+     * branches, and spawned behaviours) are interned recursively, so the entire returned tree consists
+     * of canonical instances.
+     * @param behaviour The Behaviour to intern.
+     * @return A Behaviour structurally identical to the parameter, which is the same instance for all
+     * structurally identical Behaviours.
+     */
+    public static Behaviour intern(Behaviour behaviour){
+        if (behaviour == null || behaviour.interned ||
+                behaviour instanceof BreakBehaviour || behaviour instanceof Termination)
+            return behaviour;   //Singletons are canonical by construction
+
+        Behaviour candidate = switch (behaviour){
+            case Send send -> {
+                var continuation = intern(send.continuation);
+                yield continuation == send.continuation ? send :
+                        new Send(send.receiver, send.expression, continuation);
+            }
+            case Receive receive -> {
+                var continuation = intern(receive.continuation);
+                yield continuation == receive.continuation ? receive :
+                        new Receive(receive.sender, continuation);
+            }
+            case Selection selection -> {
+                var continuation = intern(selection.continuation);
+                yield continuation == selection.continuation ? selection :
+                        new Selection(selection.receiver, selection.label, continuation);
+            }
+            case Introduce introduce -> {
+                var continuation = intern(introduce.continuation);
+                yield continuation == introduce.continuation ? introduce :
+                        new Introduce(introduce.leftReceiver, introduce.rightReceiver, continuation);
+            }
+            case Introductee introductee -> {
+                var continuation = intern(introductee.continuation);
+                yield continuation == introductee.continuation ? introductee :
+                        new Introductee(introductee.sender, introductee.processID, continuation);
+            }
+            case ProcedureInvocation invocation -> {
+                var continuation = intern(invocation.continuation);
+                yield continuation == invocation.continuation ? invocation :
+                        new ProcedureInvocation(invocation.procedure, invocation.parameters, continuation);
+            }
+            case Spawn spawn -> {
+                var child = intern(spawn.processBehaviour);
+                var continuation = intern(spawn.continuation);
+                yield child == spawn.processBehaviour && continuation == spawn.continuation ? spawn :
+                        new Spawn(spawn.variable, child, continuation);
+            }
+            case Condition condition -> {
+                var thenBehaviour = intern(condition.thenBehaviour);
+                var elseBehaviour = intern(condition.elseBehaviour);
+                var continuation = intern(condition.continuation);
+                yield thenBehaviour == condition.thenBehaviour && elseBehaviour == condition.elseBehaviour &&
+                        continuation == condition.continuation ? condition :
+                        new Condition(condition.expression, thenBehaviour, elseBehaviour, continuation);
+            }
+            case Offering offering -> {
+                boolean changed = false;
+                var branches = new LinkedHashMap<String, Behaviour>(offering.branches.size());   //Keeps the order of the branches
+                for (var branch : offering.branches.entrySet()){
+                    var internedBranch = intern(branch.getValue());
+                    changed |= internedBranch != branch.getValue();
+                    branches.put(branch.getKey(), internedBranch);
+                }
+                var continuation = intern(offering.continuation);
+                yield !changed && continuation == offering.continuation ? offering :
+                        new Offering(offering.sender, branches, continuation);
+            }
+            default -> throw new IllegalArgumentException("Cannot intern Behaviour of unknown type " + behaviour.getClass().getName());
+        };
+        return canonical(candidate);
+    }
+
+    /**
+     * Replaces every Behaviour in the provided map by its canonical instance.
+     * @param procedures Map from procedure names to their Behaviours, which is modified in place.
+     */
+    public static void internAll(Map<String, Behaviour> procedures){
+        procedures.replaceAll((__, behaviour) -> intern(behaviour));
+    }
+
+    /**
+     * Looks up a Behaviour whose nested Behaviours are already canonical in the table.
+     * If no identical Behaviour exists, candidate becomes the canonical instance.
+     */
+    private static synchronized Behaviour canonical(Behaviour candidate){
+        expungeCollected();
+        var bucket = table.computeIfAbsent(candidate.hashCode(), __ -> new ArrayList<>(1));
+        for (var entry : bucket){
+            Behaviour existing = entry.get();
+            if (existing != null && existing.shallowEquals(candidate))
+                return existing;
+        }
+        candidate.interned = true;
+        candidate.parameterised = invokesWithParameters(candidate);
+        bucket.add(new Entry(candidate));
+        return candidate;
+    }
+
+    /**
+     * @return true if the Behaviour, or one of its nested Behaviours, invokes a procedure with parameters.
+     * The nested Behaviours must already be canonical.
+     */
+    private static boolean invokesWithParameters(Behaviour behaviour){
+        if (behaviour.continuation != null && behaviour.continuation.parameterised)
+            return true;
+        return switch (behaviour){
+            case ProcedureInvocation invocation -> !invocation.parameters.isEmpty();
+            case Spawn spawn -> spawn.processBehaviour.parameterised;
+            case Condition condition -> condition.thenBehaviour.parameterised || condition.elseBehaviour.parameterised;
+            case Offering offering -> offering.branches.values().stream().anyMatch(branch -> branch.parameterised);
+            default -> false;
+        };
+    }
+
+    /**
+     * Removes the entries whose Behaviours have been garbage collected.
+     */
+    private static void expungeCollected(){
+        Object reference;
+        while ((reference = collected.poll()) != null){
+            var entry = (Entry) reference;
+            var bucket = table.get(entry.hash);
+            if (bucket == null)
+                continue;
+            bucket.remove(entry);
+            if (bucket.isEmpty())
+                table.remove(entry.hash);
+        }
+    }
+}
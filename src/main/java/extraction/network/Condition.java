@@ -4,7 +4,7 @@ import extraction.Label;
 import org.jetbrains.annotations.NotNull;
 import utility.Pair;
 
-import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Stores conditional behavior, along with the "then" and "else" branches
@@ -15,7 +15,7 @@ public class Condition extends Behaviour {
     private final int hash;
 
     @Override
-    Behaviour realValues(HashMap<String, String> substitutions){
+    Behaviour realValues(Map<String, String> substitutions){
         return this;
     }
 
@@ -52,7 +52,7 @@ public class Condition extends Behaviour {
     }
 
     @Override
-    public boolean equals(Behaviour other) {
+    boolean equalsStructurally(Behaviour other) {
         if (this == other)
             return true;
         if (!(other instanceof Condition otherC))
@@ -68,6 +68,13 @@ public class Condition extends Behaviour {
         return other instanceof Condition con && expression.equals(con.expression);
     }
 
+    @Override
+    boolean shallowEquals(Behaviour other){
+        return other instanceof Condition con && expression.equals(con.expression) &&
+                thenBehaviour == con.thenBehaviour && elseBehaviour == con.elseBehaviour &&
+                continuation == con.continuation;
+    }
+
     @Override
     public int hashCode(){
         return hash;
@@ -2,7 +2,7 @@ package extraction.network;
 
 import extraction.Label;
 
-import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Behaviour for making to (distinct other) processes acquainted (aware of each other)
@@ -31,10 +31,21 @@ public class Introduce extends Behaviour.Sender{
     }
 
     @Override
-    Behaviour realValues(HashMap<String, String> substitutions) {
+    Behaviour realValues(Map<String, String> substitutions) {
         return new Introduce(substitutions.get(leftReceiver), substitutions.get(rightReceiver), continuation);
     }
 
+    @Override
+    int realLength(Map<String, String> substitutions) {
+        return printedLength() + substitutions.get(leftReceiver).length() - leftReceiver.length() +
+                substitutions.get(rightReceiver).length() - rightReceiver.length();
+    }
+
+    @Override
+    String runtimeExpression(Map<String, String> substitutions){
+        return substitutions.get(leftReceiver);
+    }
+
     @Override
     public Label.InteractionLabel labelFrom(String process, ProcessTerm.ValueMap sub){
         return new Label.IntroductionLabel(process, sub.get(leftReceiver), sub.get(rightReceiver));
@@ -52,7 +63,7 @@ public class Introduce extends Behaviour.Sender{
     }
 
     @Override
-    public boolean equals(Behaviour other) {
+    boolean equalsStructurally(Behaviour other) {
         if (this == other)
             return true;
         if (!(other instanceof Introduce introduce))
@@ -1,6 +1,6 @@
 package extraction.network;
 
-import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Behaviour for being informed by another process of the existence of a third process.
@@ -24,10 +24,15 @@ public class Introductee extends Behaviour.Receiver {
     }
 
     @Override
-    Behaviour realValues(HashMap<String, String> substitutions) {
+    Behaviour realValues(Map<String, String> substitutions) {
         return new Introductee(substitutions.get(sender), processID, continuation);
     }
 
+    @Override
+    int realLength(Map<String, String> substitutions) {
+        return printedLength() + substitutions.get(sender).length() - sender.length();
+    }
+
     @Override
     public int hashCode() {
         return hash;
@@ -40,7 +45,7 @@ public class Introductee extends Behaviour.Receiver {
     }
 
     @Override
-    public boolean equals(Behaviour other) {
+    boolean equalsStructurally(Behaviour other) {
         if (this == other)
             return true;
         if (!(other instanceof Introductee introductee))
@@ -31,8 +31,8 @@ public class NetAnalyser {
         for (var process : network.processes.entrySet()){
             String name = process.getKey();
             ProcessTerm term = process.getValue();
-            for (var procedure : term.procedures.entrySet()) {
-                if (!isGuarded(Set.of(procedure.getKey()), procedure.getValue(), term.procedures)){
+            for (var procedure : term.procedures().entrySet()) {
+                if (!isGuarded(Set.of(procedure.getKey()), procedure.getValue(), term.procedures())){
                     System.err.println("The procedure " + procedure.getKey() + " in process " + name + " is not well guarded.");
                     return false;
                 }
@@ -164,7 +164,7 @@ public class NetAnalyser {
             switch (hostNode){
                 case ProcedureInvocation procedureInvocation:
                     String procedure = procedureInvocation.procedure;
-                    if (!checkTerm.procedures.containsKey(procedure))   //Procedure does not exist
+                    if (!checkTerm.procedures().containsKey(procedure))   //Procedure does not exist
                         throw new UndefinedProcedureException("Attempted to invoke procedure \""+procedure+"\" which is not defined for this process.");
                     if (!otherProcesses.containsAll(procedureInvocation.parameters)){   //Parameters are not defined
                         var unknown = new HashSet<String>();
@@ -177,8 +177,8 @@ public class NetAnalyser {
                         //This procedure will now be checked, so add it to the set of checked procedures
                         checkedProcedures.add(procedure);
                         //Add the parameters to list of known other processes.
-                        otherProcesses.addAll(checkTerm.parameters.get(procedure));
-                        checkTerm.procedures.get(procedure).accept(this);
+                        otherProcesses.addAll(checkTerm.procedures().parameters(procedure));
+                        checkTerm.procedures().get(procedure).accept(this);
                         procedureInvocation.continuation.accept(this);
                     }
                     return null;    //Process have been checked
@@ -300,9 +300,9 @@ public class NetAnalyser {
             return strongest(branchStatus, continuationStatus);
         }
 
-        private final HashMap<String, Behaviour> procedures;
+        private final Map<String, Behaviour> procedures;
         private final HashMap<String, ContinueStatus> procedureStatus = new HashMap<>();
-        private ReachableCodeChecker(HashMap<String, Behaviour> procedures){
+        private ReachableCodeChecker(Map<String, Behaviour> procedures){
             this.procedures = procedures;
         }
 
@@ -323,7 +323,7 @@ public class NetAnalyser {
                 ProcessTerm process = entry.getValue();
                 try {
                     //Construct a checker with this process' procedures
-                    var checker = new ReachableCodeChecker(process.procedures);
+                    var checker = new ReachableCodeChecker(process.procedures());
                     //Check if there are any unsatisfied continuations
                     if (checker.Visit(process.rawMain()) == MUST) {
                         throw new IncompleteBehaviourException("A branch in process %s wants to continue to an ancestor Behaviours continuation, but not such ancestor exists.%nThe problematic process is defined as %s%n".formatted(entry.getKey(), entry.getValue()));
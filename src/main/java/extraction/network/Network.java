@@ -7,11 +7,14 @@ import extraction.network.Behaviour.*;
 import utility.Pair;
 
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class Network extends NetworkASTNode {
-    public HashMap<String, ProcessTerm> processes;      //Map from process names to procedures
-    private final AdjacencyMatrix introduced;           //Which processes are known to each other
+    public HashMap<String, ProcessTerm> processes;      //Map from process names to procedures, in the order they were added
+    private AdjacencyMatrix introduced;                 //Which processes are known to each other
     private int nextID = 0;                             //Next available process ID
+    private UndoLog undoLog = null;                     //Records changes, if this is a working copy
 
     /**
      * A Network object stores a mapping from process names to process terms (procedures).
@@ -38,43 +41,180 @@ public class Network extends NetworkASTNode {
      */
     public HashMap<String, ProcessTerm> unfold(){
         HashMap<String, ProcessTerm> unfoldedProcesses = new HashMap<>();
-        processes.forEach((name, term) -> {
+        for (var name : processes.keySet()) {
+            var term = processes.get(name);
             if (term.rawMain() instanceof ProcedureInvocation) {
-                unfoldedProcesses.put(name, term.copy());
-                term.unfoldRecursively();
+                //A working copy never modifies the original term, so it can be kept as is
+                unfoldedProcesses.put(name, undoLog == null ? term.copy() : term);
+                writable(name).unfoldRecursively();
             }
-        });
+        }
         return unfoldedProcesses;
     }
 
     /**
-     * Restores ProcessTerm mains, if the process name is not in exceptions.
-     * Specifically, the main behaviour of each ProcessTerm in the network gets replaced with that from
-     * originalProcesses, if an entry exists for that process, unless its name is in exceptions.
-     * @param originalProcesses Processes to restore, and what to restore them to.
-     * @param exceptions Names of processes that should not be restored, even if they are in originalProcesses.
+     * Returns a Network with the processes of this Network as they are after unfolding, which must only be read.
+     * Unfolded terms are kept by the terms they are unfolded from, so a term shared by several networks is
+     * only unfolded once. The processes are iterated in the same order as in this Network.
      */
-    public void restoreExcept(HashMap<String, ProcessTerm> originalProcesses, HashSet<String> exceptions){
-        originalProcesses.forEach((name, term) -> {
-            if (!exceptions.contains(name)){
-                processes.get(name).restore(term);
-            }
-        });
+    public Network unfoldedView(){
+        HashMap<String, ProcessTerm> unfolded = new LinkedHashMap<>(processes.size());
+        processes.forEach((name, term) -> unfolded.put(name, term.unfolded()));
+        return new Network(unfolded, introduced);
+    }
+
+    /* ------------------------------
+        Working copies and undo log
+       ------------------------------ */
+
+    /**
+     * Log of the changes to a working copy since its last checkpoint.
+     * ProcessTerms in a working copy are shared with the network it was created from, so before a term is
+     * modified, it is replaced by a copy, and the replaced term is logged. Undoing the changes is done by putting
+     * the logged terms back. The AdjacencyMatrix is copied the first time it changes after a checkpoint.
+     */
+    private static class UndoLog{
+        final ArrayList<String> names = new ArrayList<>();              //Processes whose term was replaced or added
+        final ArrayList<ProcessTerm> replaced = new ArrayList<>();      //The replaced terms, or null if added
+        final HashSet<String> copied = new HashSet<>();                 //Processes with a term private to the working copy
+        AdjacencyMatrix introduced;                                     //State of the network at the checkpoint
+        boolean introducedCopied = false;
+        int changes = 0;                                                //Counts changes, to detect stale branches
+
+        void log(String name, ProcessTerm term){
+            names.add(name);
+            replaced.add(term);
+        }
+
+        /**
+         * Called when the terms and matrix of the working copy are shared with a different Network,
+         * such that they are copied before being modified.
+         */
+        void shared(){
+            copied.clear();
+            introducedCopied = false;
+        }
+    }
+
+    /**
+     * Creates a working copy of this Network, which records its changes such that they can be undone.
+     * The working copy shares its ProcessTerms with this Network, and only copies the terms it modifies, so
+     * this Network remains unchanged.
+     * Use checkpoint() and rollback() to undo changes, and snapshot() to get a Network of the current state
+     * that is unaffected by later changes to the working copy.
+     * @return A working copy of this Network, with a checkpoint at its initial state.
+     */
+    public Network workingCopy(){
+        var copy = new Network(shareProcesses(), introduced);
+        copy.nextID = nextID;
+        copy.undoLog = new UndoLog();
+        copy.checkpoint();
+        return copy;
+    }
+
+    /**
+     * Marks the current state of this working copy as the state rollback() returns to.
+     */
+    public void checkpoint(){
+        undoLog.names.clear();
+        undoLog.replaced.clear();
+        undoLog.shared();       //Terms from before the checkpoint must be copied, so the rollback can restore them
+        undoLog.introduced = introduced;
     }
 
     /**
-     * Restores the main Behaviour of selected processes to that of a previous copy.
-     * @param originalProcesses The processes to restore from.
-     * @param toRestore Names of the processes to restore
+     * Undoes all changes to this working copy since the last checkpoint.
+     * The process ID counter is not reset, so processes spawned after a rollback get different names
+     * than the processes spawned in the undone changes.
      */
-    public void restoreProcesses(HashMap<String, ProcessTerm> originalProcesses, Collection<String> toRestore){
-        toRestore.forEach(processName -> {
-            ProcessTerm oldTerm = originalProcesses.get(processName);
-            if (oldTerm == null)
-                processes.remove(processName);  //Remove if process just spawned
+    public void rollback(){
+        undoLog.changes++;
+        for (int i = undoLog.names.size() - 1; i >= 0; i--){
+            var term = undoLog.replaced.get(i);
+            if (term == null)
+                processes.remove(undoLog.names.get(i));    //Remove if process just spawned
             else
-                processes.get(processName).restore(oldTerm);
-        });
+                processes.put(undoLog.names.get(i), term);
+        }
+        introduced = undoLog.introduced;
+        checkpoint();
+    }
+
+    /**
+     * Returns a Network with the current state of this working copy, which is not affected by
+     * later changes to the working copy. If this is not a working copy, this Network itself is returned.
+     * The snapshot shares ProcessTerms with the working copy, which will copy them before modifying them.
+     */
+    public Network snapshot(){
+        if (undoLog == null)
+            return this;
+        var snapshot = new Network(shareProcesses(), introduced);
+        snapshot.nextID = nextID;
+        undoLog.shared();
+        return snapshot;
+    }
+
+    /**
+     * Returns the ProcessTerm of a process, such that it can be modified. If its main Behaviour is a procedure
+     * invocation, it is unfolded.
+     * In a working copy, the term is replaced by a private copy the first time it is modified since the
+     * last checkpoint or snapshot.
+     */
+    private ProcessTerm writable(String processName){
+        var term = processes.get(processName);
+        if (undoLog != null)
+            undoLog.changes++;
+        if (undoLog == null || undoLog.copied.contains(processName)){
+            term.unfoldRecursively();
+            return term;
+        }
+        undoLog.log(processName, term);
+        undoLog.copied.add(processName);
+        term = term.unfolded().copy();
+        processes.put(processName, term);
+        return term;
+    }
+
+    /**
+     * Returns the ProcessTerm of a process as it is after unfolding, or null if there is no such process.
+     * The network is not changed, and the returned term must not be modified.
+     */
+    private ProcessTerm unfolded(String processName){
+        var term = processes.get(processName);
+        return term == null ? null : term.unfolded();
+    }
+
+    /**
+     * Returns the AdjacencyMatrix, such that it can be modified.
+     * In a working copy, the matrix is copied the first time it is modified since the last checkpoint or snapshot.
+     */
+    private AdjacencyMatrix writableIntroduced(){
+        if (undoLog != null)
+            undoLog.changes++;
+        if (undoLog != null && !undoLog.introducedCopied){
+            introduced = introduced.copy();
+            undoLog.introducedCopied = true;
+        }
+        return introduced;
+    }
+
+    /**
+     * Adds a new process to the network, which is recorded if this is a working copy.
+     */
+    private void addProcess(String processName, ProcessTerm term){
+        processes.put(processName, term);
+        if (undoLog != null){
+            undoLog.changes++;
+            undoLog.log(processName, null);
+            undoLog.copied.add(processName);        //The new term is private to this network
+        }
+    }
+
+    /**
+     * Creates a copy of processes, which shares the ProcessTerms and iterates them in the same order.
+     */
+    private HashMap<String, ProcessTerm> shareProcesses(){
+        return new LinkedHashMap<>(processes);
     }
 
     /**
@@ -82,13 +222,56 @@ public class Network extends NetworkASTNode {
      * If elseLabel and elseNetwork is not null, then a conditional was reduced. The then branch are
      * the other fields.
      * The field actors is a set of all processes that reduced during the advancement.
+     * The actors are unfolded before they reduce, while the main Behaviours of the other processes are unchanged,
+     * so the advancing functions look at the processes as they are after unfolding, but only copy the actors.
      */
     public record Advancement(Label label, Network network,
-                                     Network elseNetwork, Label.ConditionLabel.ElseLabel elseLabel,
+                                     Supplier<Network> elseBranch, Label.ConditionLabel.ElseLabel elseLabel,
                                      HashSet<String> actors){
         public Advancement(Label label, Network network, HashSet<String> actors){
             this(label, network, null, null, actors);
         }
+
+        /**
+         * Returns the network of the else branch, or null if no conditional was reduced.
+         * For a working copy, the network is only created the first time it is needed, so it must be used
+         * before the network of the then branch changes again.
+         */
+        public Network elseNetwork(){
+            return elseBranch == null ? null : elseBranch.get();
+        }
+    }
+
+    /**
+     * The network of the else branch of a conditional reduced in a working copy. It is the then branch where the
+     * conditional reduced to the else branch instead, so until the working copy changes again, it is created by
+     * sharing every term of the working copy, except for that of the conditional. It is only created when needed,
+     * as the then branch is build first, and the else branch is not needed if building the then branch fails.
+     */
+    private final class ElseBranch implements Supplier<Network>{
+        private final String process;
+        private final ProcessTerm elseTerm;
+        private final int changes;
+        private Network elseNetwork = null;
+
+        ElseBranch(String process, ProcessTerm elseTerm){
+            this.process = process;
+            this.elseTerm = elseTerm;
+            changes = undoLog.changes;
+        }
+
+        @Override
+        public Network get(){
+            if (elseNetwork == null){
+                if (changes != undoLog.changes)
+                    throw new IllegalStateException("The else branch of a conditional must be used before the working copy of the then branch changes again.");
+                elseNetwork = new Network(shareProcesses(), introduced);
+                elseNetwork.processes.put(process, elseTerm);
+                elseNetwork.nextID = nextID;
+                undoLog.shared();   //The terms of this working copy are shared with the else network
+            }
+            return elseNetwork;
+        }
     }
 
     /**
@@ -97,9 +280,9 @@ public class Network extends NetworkASTNode {
      * @return An advancement record if the Network advanced, or null on failure.
      */
     public Advancement spawnAdvance(String process){
-        ProcessTerm spawnerTerm = processes.get(process);
-        if (!(spawnerTerm.rawMain() instanceof Spawn spawner))
+        if (!(unfolded(process).rawMain() instanceof Spawn spawner))
             return null;
+        ProcessTerm spawnerTerm = writable(process);
 
         String variableName = spawner.variable;
         String realName = String.format("%s/%s%d", process, spawner.variable, nextID++);
@@ -108,8 +291,8 @@ public class Network extends NetworkASTNode {
         spawnerTerm.substitute(variableName, realName);
         ProcessTerm spawnedProcess = spawnerTerm.spawnNew(spawner.processBehaviour);
 
-        processes.put(realName, spawnedProcess);                //Add the new process to the network
-        introduced.spawn(process, realName);                    //Parent and child are introduced at spawn
+        addProcess(realName, spawnedProcess);                   //Add the new process to the network
+        writableIntroduced().spawn(process, realName);          //Parent and child are introduced at spawn
 
         SpawnLabel label = new SpawnLabel(process, realName);   //Create the label for this spawn
         spawnerTerm.reduce();                                   //Reduce the parent process
@@ -131,7 +314,7 @@ public class Network extends NetworkASTNode {
      * On failure, returns null, in which case this Network is unchanged.
      */
     public Advancement CommunicationConditionalAdvance(String process){
-        var term = processes.get(process);
+        var term = unfolded(process);
         var interaction = term.prospectInteraction(process);
         if (interaction != null){
             return reduceInteraction(interaction);
@@ -145,7 +328,8 @@ public class Network extends NetworkASTNode {
 
     /**
      * Reduces this Network to the then branch of a conditional (if applicable), and generates a copy
-     * of this Network reducing to the else branch.
+     * of this Network reducing to the else branch. In a working copy, the copy shares the terms of the processes
+     * other than the conditional, and is only made when needed. See ElseBranch.
      * @return An Advancement record containing the then and else labels from this function's parameter,
      * as well as a Network identical to this one reduced to the else branch.
      */
@@ -153,14 +337,25 @@ public class Network extends NetworkASTNode {
         var thenLabel = labels.first;
         var elseLabel = labels.second;
         String process = thenLabel.process; //Name of the process with the conditional
-        if (!(processes.get(process).rawMain() instanceof Condition conditional))
+        if (!(unfolded(process).rawMain() instanceof Condition conditional))
             return null;
 
-        Network elseNetwork = this.copy();
-        processes.get(process).reduce(true);
-        elseNetwork.processes.get(process).reduce(false);
+        Supplier<Network> elseBranch;
+        if (undoLog == null){
+            Network elseNetwork = this.copy();
+            elseNetwork.writable(process).reduce(false);
+            elseBranch = () -> elseNetwork;
+            writable(process).reduce(true);
+        }
+        else {
+            //A working copy only needs a copy of the reducing process
+            ProcessTerm elseTerm = unfolded(process).copy();
+            elseTerm.reduce(false);
+            writable(process).reduce(true);
+            elseBranch = new ElseBranch(process, elseTerm);
+        }
 
-        return new Advancement(thenLabel, this, elseNetwork, elseLabel, getInvolvedProcesses(thenLabel));
+        return new Advancement(thenLabel, this, elseBranch, elseLabel, getInvolvedProcesses(thenLabel));
     }
 
     /**
@@ -169,15 +364,16 @@ public class Network extends NetworkASTNode {
      * On failure returns null, and the Network remains unchanged.
      */
     private Advancement reduceInteraction(InteractionLabel label){
-        ProcessTerm sendProcess = processes.get(label.sender);
-        ProcessTerm receiveProcess = processes.get(label.receiver);
+        ProcessTerm sendProcess = unfolded(label.sender);
+        ProcessTerm receiveProcess = unfolded(label.receiver);
 
         //Check the interaction is at all possible
-        if ( !( sendProcess.runtimeMain() instanceof Behaviour.Sender sender &&
-                receiveProcess.runtimeMain() instanceof Behaviour.Receiver receiver &&
-                sender.receiver.equals(label.receiver) &&
-                receiver.sender.equals(label.sender) &&
-                sender.expression.equals(label.expression) &&
+        //The raw mains are the same type of Behaviour as the runtime mains, but their names must be substituted
+        if ( !( sendProcess.rawMain() instanceof Behaviour.Sender sender &&
+                receiveProcess.rawMain() instanceof Behaviour.Receiver receiver &&
+                sendProcess.substitutions.get(sender.receiver).equals(label.receiver) &&
+                receiveProcess.substitutions.get(receiver.sender).equals(label.sender) &&
+                sender.runtimeExpression(sendProcess.substitutions).equals(label.expression) &&
                 introduced.isIntroduced(label.sender, label.receiver)))
             return null;
 
@@ -186,31 +382,31 @@ public class Network extends NetworkASTNode {
         if (    label instanceof CommunicationLabel &&
                 sender instanceof Send send &&
                 receiver instanceof Receive receive){
-            sendProcess.reduce();
-            receiveProcess.reduce();
+            writable(label.sender).reduce();
+            writable(label.receiver).reduce();
         }
         else if ( label instanceof SelectionLabel &&
                 sender instanceof Selection select &&
                 receiver instanceof Offering offer){
-            sendProcess.reduce();
-            receiveProcess.reduce(select.label);
+            writable(label.sender).reduce();
+            writable(label.receiver).reduce(select.label);
         }
         else if ( label instanceof IntroductionLabel intro &&
                 sender instanceof Introduce introducer &&
                 receiver instanceof Introductee introducteeR &&
                 //Check the process hidden as the expression term
-                processes.get(intro.leftProcess).runtimeMain() instanceof Introductee introducteeL &&
-                introducteeL.sender.equals(intro.introducer) &&
+                unfolded(intro.leftProcess).rawMain() instanceof Introductee introducteeL &&
+                unfolded(intro.leftProcess).substitutions.get(introducteeL.sender).equals(intro.introducer) &&
                 introduced.isIntroduced(intro.introducer, intro.leftProcess)){
-            ProcessTerm receiveProcessL = processes.get(intro.leftProcess);
-            //We need the unmodified mains to get the variable names for the introduced process
-            introducteeL = (Introductee) receiveProcessL.rawMain();
-            introducteeR = (Introductee) receiveProcess.rawMain();
+            sendProcess = writable(label.sender);
+            receiveProcess = writable(label.receiver);
+            ProcessTerm receiveProcessL = writable(intro.leftProcess);
+            //The process variables of the introduced processes are not substituted
             //Bind varname in left process to the name of the right, and vice versa.
             receiveProcessL.substitute(introducteeL.processID, intro.rightProcess);
             receiveProcess.substitute(introducteeR.processID, intro.leftProcess);
             //Remember that the introduced processes are now allowed to communicate
-            introduced.introduce(intro.leftProcess, intro.rightProcess);
+            writableIntroduced().introduce(intro.leftProcess, intro.rightProcess);
 
             //Advance the network.
             sendProcess.reduce();
@@ -223,7 +419,17 @@ public class Network extends NetworkASTNode {
         return new Advancement(label, this, getInvolvedProcesses(label));
     }
 
+    /**
+     * Attempts to advance the network by a multicom starting with the interaction of the given process, where
+     * the processes it sends to send before they receive.
+     * Returns null on failure, in which case the network is unmodified.
+     * @param process The name of the process whose main Behaviour starts the multicom.
+     * @return An Advancement record with a MulticomLabel, and a new Network. This Network is unchanged.
+     */
     public Advancement multicomAdvance(String process){
+        //Cheap check before anything is copied
+        if (!(unfolded(process).rawMain() instanceof Sender starter) || !sendsToSender(process, starter))
+            return null;
         class FauxIntroductionLabel extends InteractionLabel {
             /**
              * Create a faux InteractionLabel that is functionally like an IntroductionLabel.
@@ -241,16 +447,23 @@ public class Network extends NetworkASTNode {
         record ProcessProcedure(String processName, String procedure){}
         var checkedProcedures = new HashMap<ProcessProcedure, Boolean>();   //Keeps track of invoked procedures to prevent infinite loop.
 
-        var processes = copyProcesses(); //Shadow processes with a copy to modify
+        //Shadow processes with a map sharing the terms, where terms are copied before they are modified
+        var processes = shareProcesses();
+        var copied = new HashSet<String>();
+        Function<String, ProcessTerm> shadowed = name -> {
+            if (copied.add(name))
+                processes.put(name, processes.get(name).unfolded().copy());
+            return processes.get(name);
+        };
+        if (undoLog != null)
+            undoLog.shared();       //The terms of this working copy may be shared with the new network
         var known = introduced.copy();
-        var processTerm = processes.get(process);
+        var processTerm = shadowed.apply(process);
 
         var actions = new ArrayList<InteractionLabel>();
         var actors = new HashSet<String>();
         var waiting = new LinkedList<InteractionLabel>();
 
-        if (!(processTerm.rawMain() instanceof Sender sender))
-            return null; //Only sending behaviours can start a multicom
         //Add initial Label to the waiting list
         var label = processTerm.prospectInteraction(process);
         if (label instanceof IntroductionLabel intro)
@@ -269,8 +482,9 @@ public class Network extends NetworkASTNode {
             updateActors(actors, next);
 
             //Go through the process' Behaviour, until a receiving Behaviour is reached.
-            processTerm = processes.get(next.receiver);
-            Behaviour blocking = processTerm.runtimeMain();
+            processTerm = shadowed.apply(next.receiver);
+            //Only the type of the blocking Behaviour matters, and the process it receives from, which is substituted below
+            Behaviour blocking = processTerm.rawMain();
             while (!(blocking instanceof Receiver receiver)){
                 if (blocking instanceof ProcedureInvocation invocation){
                     //This bit catches a special case infinite loop, where the receiver process sends forever.
@@ -279,25 +493,25 @@ public class Network extends NetworkASTNode {
                     checkedProcedures.put(new ProcessProcedure(next.receiver, invocation.procedure), true);
 
                     processTerm.unfoldRecursively();
-                    blocking = processTerm.runtimeMain();
+                    blocking = processTerm.rawMain();
                     continue;
                 } else if (!(blocking instanceof Sender)) {
                     return null; //Process not of the required form. Multicom not possible
                 }
                 //Guaranteed to be sender. The above pattern match won't typecast for some reason
-                sender = (Sender)blocking;
+                Sender sender = (Sender)blocking;
                 label = processTerm.prospectInteraction(next.receiver);
                 if (sender instanceof Introduce)
                     waiting.add(new FauxIntroductionLabel(label.sender, label.receiver, label.expression));
                 waiting.add(label);
                 processTerm.reduce();
-                blocking = processTerm.runtimeMain();  //Blocking must have actual variable values.
+                blocking = processTerm.rawMain();
             }
 
             //All send/select/introduce actions are added to waiting.
             //Blocking is now receive/offer/introductee
             //Check that it receives from the right process
-            if (!receiver.sender.equals(next.sender))
+            if (!processTerm.substitutions.get(receiver.sender).equals(next.sender))
                 return null;
             //Reduce the network, and check the Label and receiver type matches
             if (receiver instanceof Offering offering && next instanceof SelectionLabel)
@@ -327,6 +541,28 @@ public class Network extends NetworkASTNode {
         Utility and Helper functions
        ------------------------------ */
 
+    /**
+     * Returns true if a process that the main Behaviour of process sends to is itself waiting to send, which
+     * is an edge between two senders in the wait-for graph of the main Behaviours.
+     * A multicom starting from process needs such an edge. Otherwise, every process it sends to receives at once,
+     * and the multicom is a single interaction.
+     */
+    private boolean sendsToSender(String process, Sender sender){
+        var term = unfolded(process);
+        if (waitsToSend(term.substitutions.get(sender.receiver)))
+            return true;
+        //The left process of an introduction also receives
+        return sender instanceof Introduce introduce && waitsToSend(term.substitutions.get(introduce.leftReceiver));
+    }
+
+    /**
+     * Returns true if the main Behaviour of the process sends, or is a procedure invocation that may send.
+     */
+    private boolean waitsToSend(String process){
+        var term = unfolded(process);
+        return term != null && (term.rawMain() instanceof Sender || term.rawMain() instanceof ProcedureInvocation);
+    }
+
     /**
      * Returns a set of process names from a Label.
      * @param label A ConditionLabel or InteractionLabel to get the involved processes from.
@@ -421,7 +657,7 @@ public class Network extends NetworkASTNode {
      * Creates a copy of processes, where each ProcessTerm is also a copy.
      */
     public HashMap<String, ProcessTerm> copyProcesses(){
-        HashMap<String, ProcessTerm> processesCopy = new HashMap<>(processes.size());
+        HashMap<String, ProcessTerm> processesCopy = new LinkedHashMap<>(processes.size());
         processes.forEach((key, value) -> processesCopy.put(key, value.copy()));
         return processesCopy;
     }
@@ -447,19 +683,19 @@ public class Network extends NetworkASTNode {
     }
 
     /**
-     * Calculates a hashcode from the process names and process terms.
+     * Calculates a hashcode from the process names and process terms, as the sum of the hashes of the
+     * processes that are not terminated. ProcessTerms keep their hash and whether they are terminated,
+     * so only the processes changed since they were last hashed are calculated.
      * @return Hash of this extraction.network mapping
      */
     public int hashCode(){
-        return processes.entrySet().stream().mapToInt(
-                //Map each process to its hash value in the stream
-                entry -> {
-                    if (entry.getValue().isTerminated())
-                        return 0;
-                    return entry.getKey().hashCode() * 31 + entry.getValue().hashCode() * 29;
-                }
-        //Add up all the hash values of the stream and return the total.
-        ).reduce(0, Integer::sum);
+        int hash = 0;
+        for (var entry : processes.entrySet()){
+            ProcessTerm term = entry.getValue();
+            if (!term.isTerminated())
+                hash += entry.getKey().hashCode() * 31 + term.hashCode() * 29;
+        }
+        return hash;
     }
 }
 
@@ -4,7 +4,6 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.Collections;
 
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -35,10 +34,15 @@ public class Offering extends Behaviour.Receiver {
     }
 
     @Override
-    Behaviour realValues(HashMap<String, String> substitutions) {
+    Behaviour realValues(Map<String, String> substitutions) {
         return new Offering(substitutions.get(sender), branches, continuation);
     }
 
+    @Override
+    int realLength(Map<String, String> substitutions) {
+        return printedLength() + substitutions.get(sender).length() - sender.length();
+    }
+
     @Override
     public String toString(){
         StringBuilder builder = new StringBuilder();
@@ -55,7 +59,7 @@ public class Offering extends Behaviour.Receiver {
     }
 
     @Override
-    public boolean equals(Behaviour other){
+    boolean equalsStructurally(Behaviour other){
         if (this == other)
             return true;
         if (!(other instanceof Offering otherOffer))
@@ -78,6 +82,18 @@ public class Offering extends Behaviour.Receiver {
                 branches.keySet().equals(off.branches.keySet());
     }
 
+    @Override
+    boolean shallowEquals(Behaviour other){
+        if (!compareData(other) || continuation != other.continuation)
+            return false;
+        var otherBranches = ((Offering)other).branches;
+        for (var branch : branches.entrySet()){
+            if (branch.getValue() != otherBranches.get(branch.getKey()))
+                return false;
+        }
+        return true;
+    }
+
     @Override
     public int hashCode(){
         return hash;
@@ -3,8 +3,8 @@ package extraction.network;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Simple Behavior that calls a procedure
@@ -36,10 +36,18 @@ public class ProcedureInvocation extends Behaviour {
     }
 
     @Override
-    Behaviour realValues(HashMap<String, String> substitutions){
+    Behaviour realValues(Map<String, String> substitutions){
         return new ProcedureInvocation(procedure, parameters.stream().map(substitutions::get).toList(), continuation);
     }
 
+    @Override
+    int realLength(Map<String, String> substitutions){
+        int length = printedLength();
+        for (String parameter : parameters)
+            length += substitutions.get(parameter).length() - parameter.length();
+        return length;
+    }
+
     /**
      * Returns a read-only view of the parameter values used in this invocation
      */
@@ -61,7 +69,7 @@ public class ProcedureInvocation extends Behaviour {
     }
 
     @Override
-    public boolean equals(Behaviour other){
+    boolean equalsStructurally(Behaviour other){
         if (this == other)
             return true;
         if (!(other instanceof ProcedureInvocation otherPI))
@@ -76,6 +84,12 @@ public class ProcedureInvocation extends Behaviour {
         return other instanceof ProcedureInvocation pi && procedure.equals(pi.procedure);
     }
 
+    @Override
+    boolean shallowEquals(Behaviour other){
+        return other instanceof ProcedureInvocation pi && procedure.equals(pi.procedure) &&
+                parameters.equals(pi.parameters) && continuation == pi.continuation;
+    }
+
     @Override
     public int hashCode(){
         return hash;
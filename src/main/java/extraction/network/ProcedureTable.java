@@ -0,0 +1,221 @@
+package extraction.network;
+
+import extraction.network.Behaviour.BreakBehaviour;
+import extraction.network.Behaviour.Interaction;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * The procedures of a process, as a read only map from procedure names to their Behaviours.<br>
+ * The table is built once, when the process is parsed or projected, and is shared by reference by all copies of
+ * its ProcessTerm, and by the processes spawned from it. It is immutable, so terms sharing it can be used by
+ * several threads at once. Everything a term needs to know about its procedures is summarised when the table
+ * is built: The hash of the procedures, which procedures need a continuation to return to, which become
+ * Termination, and the depth of each procedure body. Only the names used by each procedure are found lazily,
+ * and stored in a concurrent cache of the table (see UsedVariables).<br>
+ * Procedures are compared by their Behaviours only, so tables with different parameter names may be equal.
+ */
+public final class ProcedureTable extends AbstractMap<String, Behaviour> {
+    public static final ProcedureTable EMPTY = new ProcedureTable(new HashMap<>(), new HashMap<>());
+    private final Map<String, Behaviour> behaviours;
+    private final Map<String, List<String>> parameters;
+    private final int hash;
+    private final Set<String> continuing;       //Procedures that need a continuation to return to
+    private final Set<String> terminating;      //Procedures that expand to Termination
+    private final Map<String, Integer> depths;  //The depth of each procedure body. See ProcessTerm.depth()
+    private final ConcurrentHashMap<String, Set<String>> usedVariables = new ConcurrentHashMap<>();
+
+    /**
+     * Builds the table of procedures. The table takes ownership of the maps, which must not be modified afterwards.
+     * @param behaviours Map from procedure names to their Behaviours.
+     * @param parameters Map from procedure names to their parameter variable names.
+     */
+    public ProcedureTable(HashMap<String, Behaviour> behaviours, HashMap<String, List<String>> parameters){
+        if (!behaviours.keySet().equals(parameters.keySet()))
+            throw new IllegalArgumentException("Could not instantiate ProcessTerm, because the provided procedures and procedure parameters does not match.");
+        this.behaviours = Collections.unmodifiableMap(behaviours);
+        this.parameters = Collections.unmodifiableMap(parameters);
+        hash = behaviours.hashCode();
+        continuing = findContinuing(behaviours);
+        terminating = findTerminating(behaviours);
+        var depths = new HashMap<String, Integer>(behaviours.size() * 2);
+        behaviours.forEach((name, behaviour) -> depths.put(name, ProcessTerm.depth(behaviour)));
+        this.depths = depths;
+    }
+
+    /**
+     * Builds a table where the procedures have no parameters.
+     */
+    public static ProcedureTable withoutParameters(HashMap<String, Behaviour> behaviours){
+        var parameters = new HashMap<String, List<String>>();
+        behaviours.keySet().forEach(name -> parameters.put(name, List.of()));
+        return new ProcedureTable(behaviours, parameters);
+    }
+
+    /**
+     * @return A table where the Behaviour of each procedure is replaced by the result of the function,
+     * and the parameters are the same.
+     */
+    public ProcedureTable replaceBehaviours(BiFunction<String, Behaviour, Behaviour> function){
+        var replaced = new HashMap<>(behaviours);
+        replaced.replaceAll(function);
+        return new ProcedureTable(replaced, new HashMap<>(parameters));
+    }
+
+    /**
+     * @return The parameter variable names of the procedure, or null if there is no such procedure.
+     */
+    public List<String> parameters(String procedure){
+        return parameters.get(procedure);
+    }
+
+    /**
+     * @return A read only map from procedure names to their parameter variable names.
+     */
+    public Map<String, List<String>> parameters(){
+        return parameters;
+    }
+
+    /**
+     * @return true if the procedure ends in a BreakBehaviour, such that it returns to a continuation.
+     */
+    boolean continues(String procedure){
+        return continuing.contains(procedure);
+    }
+
+    /**
+     * @return true if the procedure is Termination, or an invocation of a procedure that expands to Termination.
+     */
+    boolean terminates(String procedure){
+        return terminating.contains(procedure);
+    }
+
+    /**
+     * @return The number of continuations to dereference in the body of the procedure before reaching a
+     * Termination or BreakBehaviour, or -1 if it is Termination.
+     */
+    int depth(String procedure){
+        return depths.get(procedure);
+    }
+
+    /**
+     * Cache of the names used by each procedure, and the procedures it invokes.
+     */
+    ConcurrentHashMap<String, Set<String>> usedVariables(){
+        return usedVariables;
+    }
+
+    /**
+     * Returns true if the provided Behaviour needs a continuation to return to,
+     * or returns false if the provided Behaviour will never make use of a continuation
+     * not defined within the Behaviours subtree.
+     */
+    boolean endsInBreakBehaviour(Behaviour behaviour){
+        return endsInBreakBehaviour(behaviour, continuing);
+    }
+
+    /**
+     * Same as endsInBreakBehaviour(Behaviour), but looks up which invoked procedures need a continuation in
+     * the provided set. Procedures not in the set are assumed not to need a continuation.
+     */
+    private static boolean endsInBreakBehaviour(Behaviour b, Set<String> continuing){
+        switch (b){
+            case BreakBehaviour br: //Break or None behaviour
+                return true;
+            case Termination t:
+                return false;
+            case Condition cond:    //Return true of either branch and the continuation needs a continuation
+                return (endsInBreakBehaviour(cond.thenBehaviour, continuing) ||
+                        endsInBreakBehaviour(cond.elseBehaviour, continuing)) &&
+                        endsInBreakBehaviour(cond.continuation, continuing);
+            case Offering offer:    //Returns true if any branch and the continuation needs a continuation
+                return offer.branches.values().stream().anyMatch(branch -> endsInBreakBehaviour(branch, continuing)) &&
+                        endsInBreakBehaviour(offer.continuation, continuing);
+            case ProcedureInvocation inv:       //Returns if the procedure needs a continuation, and if the continuation needs a continuation
+                return continuing.contains(inv.procedure) && endsInBreakBehaviour(inv.continuation, continuing);
+            case Interaction inter:             //For interactions, just check their continuation
+                return endsInBreakBehaviour(inter.continuation, continuing);
+            default:                            //In case new types are added
+                throw new IllegalStateException("Unexpected type when checking if a Behaviour returns to a continuation or not. The unexpected type is "+b.getClass().getName());
+        }
+    }
+
+    /**
+     * Finds the procedures that need a continuation. Recursive procedures are first assumed not to need a
+     * continuation, and then updated until nothing changes.
+     */
+    private static Set<String> findContinuing(Map<String, Behaviour> behaviours){
+        var continuing = new HashSet<String>();
+        boolean changed = true;
+        while (changed){
+            changed = false;
+            for (var procedure : behaviours.entrySet()){
+                if (!continuing.contains(procedure.getKey()) && endsInBreakBehaviour(procedure.getValue(), continuing)){
+                    continuing.add(procedure.getKey());
+                    changed = true;
+                }
+            }
+        }
+        return continuing;
+    }
+
+    /**
+     * Finds the procedures that are Termination, or invoke procedures that expand to Termination.
+     * Procedures that only invoke each other in a cycle are not terminating.
+     */
+    private static Set<String> findTerminating(Map<String, Behaviour> behaviours){
+        var terminating = new HashSet<String>();
+        for (String procedure : behaviours.keySet()){
+            var visited = new HashSet<String>();
+            Behaviour behaviour = behaviours.get(procedure);
+            while (behaviour instanceof ProcedureInvocation invocation && visited.add(invocation.procedure))
+                behaviour = behaviours.get(invocation.procedure);
+            if (behaviour instanceof Termination)
+                terminating.add(procedure);
+        }
+        return terminating;
+    }
+
+    @Override
+    public Behaviour get(Object procedure){
+        return behaviours.get(procedure);
+    }
+
+    @Override
+    public boolean containsKey(Object procedure){
+        return behaviours.containsKey(procedure);
+    }
+
+    @Override
+    public int size(){
+        return behaviours.size();
+    }
+
+    @Override
+    public Set<Entry<String, Behaviour>> entrySet(){
+        return behaviours.entrySet();
+    }
+
+    @Override
+    public Set<String> keySet(){
+        return behaviours.keySet();
+    }
+
+    @Override
+    public Collection<Behaviour> values(){
+        return behaviours.values();
+    }
+
+    @Override
+    public boolean equals(Object other){
+        return this == other ||
+                other instanceof ProcedureTable table && hash == table.hash && behaviours.equals(table.behaviours);
+    }
+
+    @Override
+    public int hashCode(){
+        return hash;
+    }
+}
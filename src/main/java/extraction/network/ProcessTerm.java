@@ -5,13 +5,10 @@ import extraction.network.Behaviour.*;
 import utility.Pair;
 
 import java.util.*;
+import java.util.function.BiFunction;
 
 public class ProcessTerm extends NetworkASTNode {
-    public final HashMap<String, Behaviour> procedures;     //Map from procedure names to their behaviours
-    public final HashMap<String, List<String>> parameters;         //Map from procedure names to their parameter variable names
-                                                            //Is assumed to be readonly when extracting.
-    private HashMap<String, Boolean> procedureContinues = new HashMap<>();//Map from procedure names, to whether they return to a continuation or not.
-    private final int proceduresHash;
+    private ProcedureTable procedures;                       //Shared by copies and spawned children. See ProcedureTable
     /**
      * The current main Behaviour of this process, with variable names.
      * Consider using main() to read it, as it substitutes variable names with their corresponding values.
@@ -19,81 +16,186 @@ public class ProcessTerm extends NetworkASTNode {
      * what is returned from main() is ok.
      */
     private Behaviour main;                                  //The main behaviour for the procedure
-    //Used for getting real process names from variables.
-    static class ValueMap extends HashMap<String, String>{
-        public ValueMap(){}
-        public ValueMap(Map<String, String> c){
-            super(c);
+    /**
+     * Map used for getting real process names from variables. If no mapping exists for a name, it is assumed
+     * to be a constant value, and get returns the name itself.<br>
+     * The map is immutable, so copies of a ProcessTerm share it, and binding a variable creates a new map.
+     * Processes bind few variables, so the entries are kept in small arrays which are copied on each binding.
+     */
+    static final class ValueMap extends AbstractMap<String, String>{
+        static final ValueMap EMPTY = new ValueMap(new String[0], new String[0]);
+        private final String[] keys;
+        private final String[] values;
+        private ValueMap(String[] keys, String[] values){
+            this.keys = keys;
+            this.values = values;
+        }
+        private int indexOf(Object key){
+            for (int i = 0; i < keys.length; i++){
+                if (keys[i].equals(key))
+                    return i;
+            }
+            return -1;
         }
         @Override
         public String get(Object key){
-            return getOrDefault(key, (String)key);  //If no mapping exists, assume constant value
+            int i = indexOf(key);
+            return i == -1 ? (String)key : values[i];  //If no mapping exists, assume constant value
         }
         @Override
-        public String put(String key, String value){
-            return super.put(key, get(value));      //If value->pID exists, then create key->pID instead
+        public boolean containsKey(Object key){
+            return indexOf(key) != -1;
+        }
+        @Override
+        public int size(){
+            return keys.length;
+        }
+        /**
+         * @return A map where key is bound to value, and the other entries are as in this map.
+         * If value->pID exists, then key->pID is created instead.
+         */
+        ValueMap with(String key, String value){
+            value = get(value);
+            int i = indexOf(key);
+            if (i != -1 && values[i].equals(value))
+                return this;
+            String[] newKeys = keys, newValues;
+            if (i == -1){
+                i = keys.length;
+                newKeys = Arrays.copyOf(keys, i + 1);
+                newKeys[i] = key;
+                newValues = Arrays.copyOf(values, i + 1);
+            }
+            else
+                newValues = values.clone();
+            newValues[i] = value;
+            return new ValueMap(newKeys, newValues);
+        }
+        @Override
+        public Set<Entry<String, String>> entrySet(){
+            return new AbstractSet<>(){
+                @Override
+                public Iterator<Entry<String, String>> iterator(){
+                    return new Iterator<>(){
+                        private int next = 0;
+                        @Override
+                        public boolean hasNext(){
+                            return next < keys.length;
+                        }
+                        @Override
+                        public Entry<String, String> next(){
+                            if (next == keys.length)
+                                throw new NoSuchElementException();
+                            var entry = new SimpleImmutableEntry<>(keys[next], values[next]);
+                            next++;
+                            return entry;
+                        }
+                    };
+                }
+                @Override
+                public int size(){
+                    return keys.length;
+                }
+            };
         }
     }
-    ValueMap substitutions = new ValueMap();
-    private static class ContinuationStack{
-        private record Continuation(Behaviour behaviour, int depth){}
-        private final LinkedList<Continuation> stack;
-        private int accumulatedHash = 0;
-        public ContinuationStack(){
-            stack = new LinkedList<>();
+    ValueMap substitutions = ValueMap.EMPTY;
 
+    /**
+     * Stack of the continuations to return to when the main Behaviour reaches a BreakBehaviour.
+     * The stack is a persistent linked list, so pushing and popping creates a new stack that shares its tail with
+     * the old one. Copies of a ProcessTerm can then share the stack, and comparisons stop when the tails are shared.
+     * Each entry stores the hash of the stack up to and including itself.
+     */
+    private static final class ContinuationStack{
+        static final ContinuationStack EMPTY = new ContinuationStack(null, 0, null, 0, 0);
+        private final Behaviour behaviour;
+        private final int depth;
+        private final ContinuationStack next;
+        private final int accumulatedHash;
+        private final int size;
+        private ContinuationStack(Behaviour behaviour, int depth, ContinuationStack next, int accumulatedHash, int size){
+            this.behaviour = behaviour;
+            this.depth = depth;
+            this.next = next;
+            this.accumulatedHash = accumulatedHash;
+            this.size = size;
         }
-        public ContinuationStack(ContinuationStack toClone){
-            stack = new LinkedList<>(toClone.stack);
-            accumulatedHash = toClone.accumulatedHash;
-        }
-        public void push(Behaviour continuation){
+        /**
+         * @return This stack with the continuation on top, or this stack if continuation is a BreakBehaviour.
+         */
+        ContinuationStack push(Behaviour continuation){
             if (continuation instanceof BreakBehaviour)
-                return;
+                return this;
             int depth = ProcessTerm.depth(continuation);
-            //If this does not allow to be followed up by a continuation
-            if (depth == -1){
-                stack.clear();
-                depth = 0;
-                accumulatedHash = continuation.hashCode();
-            }else{
-                accumulatedHash = continuation.hashCode() ^ Integer.rotateRight(accumulatedHash, depth);
-            }
-            stack.push(new Continuation(continuation, depth));
+            //If this does not allow to be followed up by a continuation, the rest of the stack is never used
+            if (depth == -1)
+                return new ContinuationStack(continuation, 0, EMPTY, continuation.hashCode(), 1);
+            return new ContinuationStack(continuation, depth, this,
+                    continuation.hashCode() ^ Integer.rotateRight(accumulatedHash, depth), size + 1);
+        }
+        /**
+         * @return The continuation on top of the stack.
+         */
+        Behaviour top(){
+            if (this == EMPTY)
+                throw new NoSuchElementException("Attempted to return to a continuation, but the continuation stack is empty");
+            return behaviour;
+        }
+        /**
+         * @return This stack without the continuation on top. Its hash is the hash before the top was pushed.
+         */
+        ContinuationStack pop(){
+            top();
+            return next;
         }
-        public Behaviour pop(){
-            //Pop the data off the stack
-            var cont = stack.pop();
-            int depth = cont.depth;
-            var continuation = cont.behaviour;
-            //Undo the changes to the hash done when this entry was inserted
-            accumulatedHash ^= continuation.hashCode();
-            accumulatedHash = Integer.rotateLeft(accumulatedHash, depth);
-
-            return continuation;
+        boolean isEmpty(){
+            return this == EMPTY;
         }
         public int hashCode(){
             return accumulatedHash;
         }
         public String toString(){
             var builder = new StringBuilder();
-            for (var entry : stack){
+            for (var entry = this; entry != EMPTY; entry = entry.next){
                 builder.append(entry.behaviour);
             }
             return builder.toString();
         }
-        public boolean equals(ContinuationStack other){
-            return stack.equals(other.stack); //I think this should work, but better double check
+        /**
+         * Returns true if both stacks contain the very same Behaviour instances in the same order.
+         * Since Behaviours are interned, this is the common case for equivalent processes.
+         * Stops as soon as the remaining stacks are shared.
+         */
+        boolean sameAs(ContinuationStack other){
+            var entry = this;
+            while (entry != other){
+                if (entry.accumulatedHash != other.accumulatedHash || entry.size != other.size ||
+                        entry.behaviour != other.behaviour || entry.depth != other.depth)
+                    return false;
+                entry = entry.next;
+                other = other.next;
+            }
+            return true;
         }
     }
-    private ContinuationStack continuationStack = new ContinuationStack();
+    private ContinuationStack continuationStack = ContinuationStack.EMPTY;
     private int currentDepth;
+    /*
+     * The state of the term only changes through the main behaviour and the continuation stack, so the hash and
+     * whether the term is terminated are kept with them, and updated by mainChanged(). Terms of nodes in the SEG
+     * are read by several threads, but never changed, so the hash is calculated lazily like String.hashCode():
+     * Any thread may calculate and store it, and they all find the same value. 0 means it is not calculated.
+     */
+    private boolean terminated;
+    private int hash;
+    private volatile ProcessTerm unfolded;      //Cached result of unfolded(), or null if not found yet
 
     /**
      * Counts the number of continuations to dereference before reaching a Termination or BreakBehaviour
      * @return -1 if Termination, or the number of continuations if a BreakBehaviour is reached.
      */
-    private static int depth(Behaviour behaviour){
+    static int depth(Behaviour behaviour){
         int depth = 0;
         while (!(behaviour instanceof Termination) && !(behaviour instanceof BreakBehaviour)){
             behaviour = behaviour.continuation;
@@ -110,38 +212,30 @@ public class ProcessTerm extends NetworkASTNode {
      * @param main The main Behaviour for this procedure
      */
     public ProcessTerm(HashMap<String, Behaviour> procedures, Behaviour main){
-        this(procedures, new HashMap<>(){{procedures.keySet().forEach(key->put(key, List.of()));}}, main);
+        this(ProcedureTable.withoutParameters(procedures), main);
     }
     public ProcessTerm(HashMap<String, Behaviour> procedures, HashMap<String, List<String>> parameters, Behaviour main){
+        this(new ProcedureTable(procedures, parameters), main);
+    }
+    public ProcessTerm(ProcedureTable procedures, Behaviour main){
         super(Action.PROCESS_TERM);
-        if(!procedures.keySet().equals(parameters.keySet()))
-            throw new IllegalArgumentException("Could not instantiate ProcessTerm, because the provided procedures and procedure parameters does not match.");
         this.procedures = procedures;
-        this.parameters = parameters;
         this.main = main;
-        proceduresHash = proceduresHashValue();
         currentDepth = depth(main);
+        mainChanged();
     }
-    //Instantiate a new object with the same fields, but where substitutions is a copy. (Its entries are copy-by-reference)
-    private ProcessTerm(HashMap<String, Behaviour> procedures, HashMap<String,List<String>> parameters, HashMap<String, Boolean> procedureContinues, ValueMap substitutions, Behaviour main){
-        this(procedures, parameters, main);
-        this.substitutions = new ValueMap(substitutions);
-        this.procedureContinues = procedureContinues;   //Cache can safely be shared across copies.
-    }
-    //Instantiate a new object with the same fields, but where substitutions and continuationStack is a copy. (Their entries are copy-by-reference)
-    private ProcessTerm(HashMap<String, Behaviour> procedures, HashMap<String, List<String>> parameters, HashMap<String, Boolean> procedureContinues,ValueMap substitutions, ContinuationStack stack, Behaviour main){
-        this(procedures, parameters, procedureContinues, substitutions, main);
-        this.continuationStack = new ContinuationStack(stack);
-    }
-
-    /**
-     * Restores this process to a previous state.
-     * @param restoreFrom The term to copy main behaviour, variable assignments, and continuation stack from.
-     */
-    void restore(ProcessTerm restoreFrom){
-        main = restoreFrom.main;
-        substitutions = new ValueMap(restoreFrom.substitutions);
-        continuationStack = new ContinuationStack(restoreFrom.continuationStack);
+    //Instantiate a new object with the same fields. The procedures, substitutions and continuationStack are
+    //immutable, so they are shared, and nothing is recalculated.
+    private ProcessTerm(ProcessTerm other){
+        super(Action.PROCESS_TERM);
+        procedures = other.procedures;
+        substitutions = other.substitutions;
+        continuationStack = other.continuationStack;
+        main = other.main;
+        currentDepth = other.currentDepth;
+        terminated = other.terminated;
+        hash = other.hash;
+        unfolded = other.unfolded;
     }
 
     /**
@@ -153,7 +247,9 @@ public class ProcessTerm extends NetworkASTNode {
      * @return The created ProcessTerm
      */
     ProcessTerm spawnNew(Behaviour mainBehaviour){
-        return new ProcessTerm(procedures, parameters, procedureContinues, new ValueMap(substitutions), mainBehaviour);
+        var spawned = new ProcessTerm(procedures, mainBehaviour);
+        spawned.substitutions = substitutions;
+        return spawned;
     }
 
     /**
@@ -165,11 +261,42 @@ public class ProcessTerm extends NetworkASTNode {
         return main.realValues(substitutions);
     }
 
+    /**
+     * Returns the length of runtimeMain().toString(), without creating the substituted Behaviour or its string.
+     */
+    public int runtimeMainLength(){
+        return main.realLength(substitutions);
+    }
+
     /**
      * Returns the main behaviour of this process as it is defined, not considering the current state of the network.
      */
     public Behaviour rawMain() { return main; }
 
+    /**
+     * Returns the procedures of this process, which are shared with its copies and the processes it spawns.
+     */
+    public ProcedureTable procedures() { return procedures; }
+
+    /**
+     * Returns the names of all processes and variables used by the main behaviour of this process as it is defined,
+     * and by the procedures it invokes, directly or indirectly. Behaviours spawned by this process are not included.
+     * The names used by each Behaviour and procedure are only found once, and shared with copies of this term.
+     * @return A read only set of process names and variables.
+     */
+    public Set<String> usedVariables(){
+        var found = usedVariables;
+        if (found == null || found.main() != main){
+            found = new FoundVariables(main, UsedVariables.of(main, procedures, procedures.usedVariables()));
+            usedVariables = found;
+        }
+        return found.used();
+    }
+    //The terms of nodes in the SEG may be read by several threads, so the main behaviour and its used variables
+    //are published together as one immutable object
+    private record FoundVariables(Behaviour main, Set<String> used){}
+    private FoundVariables usedVariables = null;
+
     /**
      * If this process term's main is a Interaction that just advanced the network,
      * call this function to reduce this process. This will replace the main behaviour with its continuation.
@@ -180,12 +307,13 @@ public class ProcessTerm extends NetworkASTNode {
         //Get the continuation.
         main = interactor.continuation;
         if (main instanceof BreakBehaviour) {
-            main = continuationStack.pop();
+            main = popContinuation();
             currentDepth = depth(main);
         }
         else {
             currentDepth--;
         }
+        mainChanged();
     }
 
     public void reduce(Boolean branch){
@@ -195,20 +323,38 @@ public class ProcessTerm extends NetworkASTNode {
             main = condition.thenBehaviour;
         else
             main = condition.elseBehaviour;
-        continuationStack.push(condition.continuation);
+        continuationStack = continuationStack.push(condition.continuation);
         if (main instanceof BreakBehaviour)
-            main = continuationStack.pop();
+            main = popContinuation();
         currentDepth = depth(main);
+        mainChanged();
     }
 
     public void reduce(String label){
         if (!(main instanceof Offering offer))
             throw new IllegalStateException("Attempted to reduce a process assuming its main behaviour is Offering, but it is not. Process is: %s".formatted(toString()));
         main = offer.branches.get(label);
-        continuationStack.push(offer.continuation);
+        continuationStack = continuationStack.push(offer.continuation);
         if (main instanceof BreakBehaviour)
-            main = continuationStack.pop();
+            main = popContinuation();
         currentDepth = depth(main);
+        mainChanged();
+    }
+
+    /**
+     * Updates what is kept about the main Behaviour and ContinuationStack. Must be called whenever they change.
+     */
+    private void mainChanged(){
+        terminated = main instanceof Termination ||
+                main instanceof ProcedureInvocation invocation && procedures.terminates(invocation.procedure);
+        hash = 0;
+        unfolded = null;
+    }
+
+    private Behaviour popContinuation(){
+        Behaviour continuation = continuationStack.top();
+        continuationStack = continuationStack.pop();
+        return continuation;
     }
 
     /**
@@ -241,7 +387,8 @@ public class ProcessTerm extends NetworkASTNode {
     public void substitute(String varName, String processName){
         //The sub.get() handles if varName is already bound to a value.
         //substitutions.put(substitutions.get(varName), processName);
-        substitutions.put(varName, processName);
+        substitutions = substitutions.with(varName, processName);
+        unfolded = null;
     }
 
     /**
@@ -249,14 +396,25 @@ public class ProcessTerm extends NetworkASTNode {
      * @return true if the Behaviour is Termination, or expands into Termination.
      */
     public boolean isTerminated(){
-        return becomesTermination(main);
+        return terminated;
     }
-    private boolean becomesTermination(Behaviour behaviour){
-        if (behaviour instanceof Termination)
-            return true;
-        else if (behaviour instanceof ProcedureInvocation invocation)
-            return becomesTermination(procedures.get(invocation.procedure));
-        return false;
+
+    /**
+     * Returns this term as it is after unfoldRecursively(), without changing this term. If the main Behaviour
+     * is a ProcedureInvocation, the unfolded term is a copy, which is only made once and shared by the copies
+     * of this term, so processes that do not act are only unfolded once, however many networks they are in.
+     * @return This term, or an unfolded copy of it, which must not be modified.
+     */
+    public ProcessTerm unfolded(){
+        if (!(main instanceof ProcedureInvocation))
+            return this;
+        ProcessTerm unfolded = this.unfolded;
+        if (unfolded == null){
+            unfolded = copy();
+            unfolded.unfoldRecursively();
+            this.unfolded = unfolded;
+        }
+        return unfolded;
     }
 
     /**
@@ -264,21 +422,26 @@ public class ProcessTerm extends NetworkASTNode {
      * until the main Behaviour is no longer ProcedureInvocation.
      */
     void unfoldRecursively() {
-        if (runtimeMain() instanceof ProcedureInvocation invocation){
+        if (main instanceof ProcedureInvocation invocation){
             String procedure = invocation.procedure;
-            var paramVar = parameters.get(procedure);
+            var paramVar = procedures.parameters(procedure);
             var paramVal = invocation.parameters;
             //Check that each parameter can be bound to a variable
             if (paramVar.size() < paramVal.size())
                 throw new IllegalStateException("Procedure invocation has too many parameters." +
-                        "Expected: " + procedure+parametersToString(paramVar) + " Got: " + invocation);
-            //Bind variables to parameter values.
-            for (int i = 0; i < paramVal.size(); i++){
-                substitute(paramVar.get(i), substitutions.get(paramVal.get(i)));
+                        "Expected: " + procedure+parametersToString(paramVar) + " Got: " + invocation.realValues(substitutions));
+            //Bind variables to parameter values. The values are the parameters of the runtime main, which are all
+            //substituted before any variable is bound.
+            var values = new String[paramVal.size()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = substitutions.get(paramVal.get(i));
+            for (int i = 0; i < values.length; i++){
+                substitute(paramVar.get(i), substitutions.get(values[i]));
             }
-            main = procedures.get(invocation.procedure);
-            continuationStack.push(invocation.continuation);
-            currentDepth = depth(main);
+            main = procedures.get(procedure);
+            continuationStack = continuationStack.push(invocation.continuation);
+            currentDepth = procedures.depth(procedure);
+            mainChanged();
             unfoldRecursively();
         }
     }
@@ -292,8 +455,8 @@ public class ProcessTerm extends NetworkASTNode {
         StringBuilder builder = new StringBuilder();
         builder.append("{");
         procedures.forEach((key, value) ->
-                builder.append(String.format("def %s%s{%s} ", key, parametersToString(parameters.get(key)), value)));
-        builder.append(String.format("main {%s%s}}", main, continuationStack.stack.size() == 0 ? "" : " " + continuationStack));
+                builder.append(String.format("def %s%s{%s} ", key, parametersToString(procedures.parameters(key)), value)));
+        builder.append(String.format("main {%s%s}}", main, continuationStack.isEmpty() ? "" : " " + continuationStack));
 
         return builder.toString();
     }
@@ -306,12 +469,12 @@ public class ProcessTerm extends NetworkASTNode {
 
     /**
      * Makes a copy o this ProcessTerm.
-     * Note that field procedures is not copied, and is assumed to be read only during extraction.
+     * Note that the procedures are not copied, as they are immutable.
      * Behaviours stored in this instance is not copied, but should be unmodifiable anyway.
      * @return copy of this object instance
      */
     public ProcessTerm copy(){
-        return new ProcessTerm(procedures, parameters, procedureContinues, substitutions, continuationStack, main);
+        return new ProcessTerm(this);
     }
 
     /**
@@ -328,71 +491,67 @@ public class ProcessTerm extends NetworkASTNode {
                 procedures.size() != other.procedures.size())   //Must have the same number of procedures
             return false;
         //Compare all processes, and fail if there is a difference.
-        for (String procedureName : procedures.keySet()){
-            var otherBehaviour = other.procedures.get(procedureName);
-            if (otherBehaviour == null || !otherBehaviour.equals(procedures.get(procedureName)))
-                return false;
-        }
+        //Copies and spawned children share the procedure table, in which case there is nothing to compare.
+        if (!procedures.equals(other.procedures))
+            return false;
 
         //Compare the main behaviours properly
-        return compareBehaviours(main, new ContinuationStack(continuationStack),
-                other.main, new ContinuationStack(other.continuationStack));
-        //return continuationStack.equals(other.continuationStack);
+        return compareBehaviours(main, continuationStack, other.main, other.continuationStack);
     }
 
     /**
      * Compares the main behaviour of two processes, taking their ContinuationStack into account.
      * Effectively (not actually) re-writes the behaviour to no longer use the stack as it traverses
      * the behaviours recursively, comparing data as it goes.
-     * This function modifies the provided stacks.
+     * The stacks are immutable, so branches share the stacks of the Behaviour they branch from.
      * @param A The main behaviour of the first process
-     * @param AS (A copy of) the ContinuationStack of the first process
+     * @param AS The ContinuationStack of the first process
      * @param B The main behaviour of the second process
-     * @param BS (A copy of) the ContinuationStack of the second process
+     * @param BS The ContinuationStack of the second process
      * @return true if the behaviours are equivalent, and false otherwise
      */
     private boolean compareBehaviours(Behaviour A, ContinuationStack AS,
                                       Behaviour B, ContinuationStack BS){
-        if (A instanceof BreakBehaviour)
-            A = AS.pop();
-        if (B instanceof BreakBehaviour)
-            B = BS.pop();
+        if (A instanceof BreakBehaviour){
+            A = AS.top();
+            AS = AS.pop();
+        }
+        if (B instanceof BreakBehaviour){
+            B = BS.top();
+            BS = BS.pop();
+        }
+        //Interned behaviours with identical stacks are trivially equivalent
+        if (A == B && AS.sameAs(BS))
+            return true;
         if (!A.compareData(B))  //Returns true if the behaviours are of the same type and their fields are equal
             return false;
         switch (A){
             case Condition CA:{
                 var CB = (Condition)B;
                 //Add the conditionals continuations to the stacks
-                AS.push(A.continuation);
-                BS.push(B.continuation);
-                //Copy the stack for the else branch
-                var ASElse = new ContinuationStack(AS);
-                var BSElse = new ContinuationStack(BS);
+                var ASBranch = AS.push(A.continuation);
+                var BSBranch = BS.push(B.continuation);
                 //Check both branches
-                return compareBehaviours(CA.thenBehaviour, AS, CB.thenBehaviour, BS) &&
-                        compareBehaviours(CA.elseBehaviour, ASElse, CB.elseBehaviour, BSElse);
+                return compareBehaviours(CA.thenBehaviour, ASBranch, CB.thenBehaviour, BSBranch) &&
+                        compareBehaviours(CA.elseBehaviour, ASBranch, CB.elseBehaviour, BSBranch);
             }
             case Offering OA:{
                 var OB = (Offering)B;
                 //Add the Offerings continuations to the stacks
-                AS.push(OA.continuation);
-                BS.push(OB.continuation);
+                var ASBranch = AS.push(OA.continuation);
+                var BSBranch = BS.push(OB.continuation);
                 //Return true if all labeled Behaviours are equal
                 return OA.branches.keySet().stream().allMatch(label ->{
                     //compareData() ensures both offerings have the same labels
                     Behaviour BBranch = OB.branches.get(label);
                     Behaviour ABranch = OA.branches.get(label);
 
-                    //Copy the stacks
-                    var ASBranch = new ContinuationStack(AS);
-                    var BSBranch = new ContinuationStack(BS);
-
                     //Check the branch
                     return compareBehaviours(ABranch, ASBranch, BBranch, BSBranch);
                 });
             }
             case ProcedureInvocation pi:{
-                if (endsInBreakBehaviour(pi))   //Check if the invoked procedure uses a continuation.
+                if (procedures.endsInBreakBehaviour(pi))   //Check if the invoked procedure uses a continuation.
                     return compareBehaviours(pi.continuation, AS, B.continuation, BS);
                 else
                     return true;//compareData() already checked they invoke the same procedure
@@ -409,38 +568,6 @@ public class ProcessTerm extends NetworkASTNode {
         }
     }
 
-    /**
-     * Returns true if the provided Behaviour needs a continuation to return to,
-     * or returns false if the provided Behaviour will never make use of a continuation
-     * not defined within the Behaviours subtree.
-     */
-    private boolean endsInBreakBehaviour(Behaviour b){
-        switch (b){
-            case BreakBehaviour br: //Break or None behaviour
-                return true;
-            case Termination t:
-                return false;
-            case Condition cond:    //Return true of either branch and the continuation needs a continuation
-                return (endsInBreakBehaviour(cond.thenBehaviour) ||
-                        endsInBreakBehaviour(cond.elseBehaviour)) &&
-                        endsInBreakBehaviour(cond.continuation);
-            case Offering offer:    //Returns true if any branch and the continuation needs a continuation
-                return offer.branches.values().stream().anyMatch(this::endsInBreakBehaviour) && endsInBreakBehaviour(offer.continuation);
-            case ProcedureInvocation inv && procedureContinues.containsKey(inv.procedure):  //Returns cached need for continuation, and if the continuation needs a continuation
-                return procedureContinues.get(inv.procedure) && endsInBreakBehaviour(inv.continuation);
-            case ProcedureInvocation inv:       //Calculates if the procedure needs a continuation, and returns if it does
-                procedureContinues.put(inv.procedure, false);       //In case of recursion
-                boolean doesReturn = endsInBreakBehaviour(procedures.get(inv.procedure));
-                procedureContinues.put(inv.procedure, doesReturn);  //Store result in cache
-                return doesReturn && endsInBreakBehaviour(inv.continuation);
-            case Interaction inter:             //For interactions, just check their continuation
-                return endsInBreakBehaviour(inter.continuation);
-            default:                            //In case new types are added
-                throw new IllegalStateException("Unexpected type when checking if a Behaviour returns to a continuation or not. The unexpected type is "+b.getClass().getName());
-        }
-    }
-
-
     public boolean equals(Object other){
         if (!(other instanceof ProcessTerm otherTerm))
             return false;
@@ -449,26 +576,32 @@ public class ProcessTerm extends NetworkASTNode {
 
     /**
      * Calculates the hashcode for this ProcessTerm.
-     * The hash is calculated from the mapping, as well as the main behaviour
+     * The hash is calculated from the mapping, as well as the main behaviour.
+     * It is only calculated once for each state of the term, and shared with copies in the same state.
      * @return the hash value considering all behaviours
      */
     public int hashCode(){
-        return proceduresHash +
-                (endsInBreakBehaviour(main) ?
+        int hash = this.hash;
+        if (hash == 0){
+            hash = hashValue();
+            this.hash = hash;
+        }
+        return hash;
+    }
+    private int hashValue(){
+        return procedures.hashCode() +
+                (procedures.endsInBreakBehaviour(main) ?
                         main.hashCode() ^ Integer.rotateRight(continuationStack.hashCode(), currentDepth)
                     :
                         main.hashCode());
     }
-    private int proceduresHashValue(){
-        return procedures.hashCode();
-    }
 
     /**
      * @return a read only map form variable names, to their bound values. If a variable is not bound,
      * the variable name is considered the variables value.
      */
     public Map<String, String> getVariables(){
-        return Collections.unmodifiableMap(substitutions);
+        return substitutions;     //Immutable
     }
 
     /**
@@ -479,7 +612,34 @@ public class ProcessTerm extends NetworkASTNode {
      */
     public static class HackProcessTerm{
         public final ProcessTerm term;
-        public final HashMap<String, Behaviour> procedures;
+        /**
+         * The procedures of the term. Changing a procedure gives the term a new ProcedureTable, so copies of
+         * the term made before the change keep the old procedures.
+         */
+        public final Map<String, Behaviour> procedures = new AbstractMap<>() {
+            @Override
+            public Set<Entry<String, Behaviour>> entrySet(){
+                return term.procedures.entrySet();
+            }
+            @Override
+            public Behaviour get(Object procedure){
+                return term.procedures.get(procedure);
+            }
+            @Override
+            public Behaviour put(String procedure, Behaviour behaviour){
+                if (!term.procedures.containsKey(procedure))
+                    throw new IllegalArgumentException("Cannot add procedure " + procedure + " without parameters.");
+                Behaviour old = term.procedures.get(procedure);
+                term.procedures = term.procedures.replaceBehaviours((name, b) -> name.equals(procedure) ? behaviour : b);
+                term.mainChanged();
+                return old;
+            }
+            @Override
+            public void replaceAll(BiFunction<? super String, ? super Behaviour, ? extends Behaviour> function){
+                term.procedures = term.procedures.replaceBehaviours(function::apply);
+                term.mainChanged();
+            }
+        };
         /**
          * Create a wrapper that allows explicit changes to a ProcessTerm, including changing the main Behaviour.
          * Intended for making raw changes to a network. Only use if you know what you are doing.
@@ -487,10 +647,11 @@ public class ProcessTerm extends NetworkASTNode {
          */
         public HackProcessTerm(ProcessTerm term){
             this.term = term;
-            procedures = term.procedures;
         }
         public void changeMain(Behaviour newMain){
             term.main = newMain;
+            term.currentDepth = depth(newMain);
+            term.mainChanged();
         }
         public Behaviour main(){
             return term.main;
@@ -1,6 +1,6 @@
 package extraction.network;
 
-import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Behavior for receiving information from another process.
@@ -20,17 +20,22 @@ public class Receive extends Behaviour.Receiver {
     }
 
     @Override
-    Behaviour realValues(HashMap<String, String> substitutions) {
+    Behaviour realValues(Map<String, String> substitutions) {
         return new Receive(substitutions.get(sender), continuation);
     }
 
+    @Override
+    int realLength(Map<String, String> substitutions) {
+        return printedLength() + substitutions.get(sender).length() - sender.length();
+    }
+
     @Override
     public String toString(){
         return String.format("%s?; %s", sender, continuation);
     }
 
     @Override
-    public boolean equals(Behaviour other){
+    boolean equalsStructurally(Behaviour other){
         if (this == other)
             return true;
         if (!(other instanceof Receive otherR))
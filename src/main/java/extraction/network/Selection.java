@@ -2,7 +2,7 @@ package extraction.network;
 
 import extraction.Label;
 
-import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This behavior represents sending a label to a process
@@ -26,10 +26,15 @@ public class Selection extends Behaviour.Sender {
     }
 
     @Override
-    Behaviour realValues(HashMap<String, String> substitutions) {
+    Behaviour realValues(Map<String, String> substitutions) {
         return new Selection(substitutions.get(receiver), label, continuation);
     }
 
+    @Override
+    int realLength(Map<String, String> substitutions) {
+        return printedLength() + substitutions.get(receiver).length() - receiver.length();
+    }
+
     @Override
     public Label.InteractionLabel labelFrom(String process, ProcessTerm.ValueMap sub){
         return new Label.SelectionLabel(sub.get(process), sub.get(receiver), sub.get(label));
@@ -41,7 +46,7 @@ public class Selection extends Behaviour.Sender {
     }
 
     @Override
-    public boolean equals(Behaviour other){
+    boolean equalsStructurally(Behaviour other){
         if (this == other)
             return true;
         if (!(other instanceof Selection otherSelect))
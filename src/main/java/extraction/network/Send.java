@@ -2,7 +2,7 @@ package extraction.network;
 
 import extraction.Label;
 
-import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Behavior for evaluating an expression and sending the result ot another process.
@@ -25,10 +25,15 @@ public class Send extends Behaviour.Sender {
     }
 
     @Override
-    Behaviour realValues(HashMap<String, String> substitutions) {
+    Behaviour realValues(Map<String, String> substitutions) {
         return new Send(substitutions.get(receiver), expression, continuation);
     }
 
+    @Override
+    int realLength(Map<String, String> substitutions) {
+        return printedLength() + substitutions.get(receiver).length() - receiver.length();
+    }
+
     public Label.InteractionLabel labelFrom(String process, ProcessTerm.ValueMap sub){
         return new Label.CommunicationLabel(sub.get(process), sub.get(receiver), expression);
     }
@@ -39,7 +44,7 @@ public class Send extends Behaviour.Sender {
     }
 
     @Override
-    public boolean equals(Behaviour other){
+    boolean equalsStructurally(Behaviour other){
         if (this == other)
             return true;
         if (!(other instanceof Send otherS))
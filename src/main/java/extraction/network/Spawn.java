@@ -2,7 +2,7 @@ package extraction.network;
 
 import extraction.Label;
 
-import java.util.HashMap;
+import java.util.Map;
 
 public class Spawn extends Behaviour.Interaction {
     public final String variable;
@@ -16,12 +16,12 @@ public class Spawn extends Behaviour.Interaction {
         hash = hashValue();
     }
 
-    Label.SpawnLabel labelFrom(String processName, HashMap<String, String> substitutions){
+    Label.SpawnLabel labelFrom(String processName, Map<String, String> substitutions){
         return new Label.SpawnLabel(processName, substitutions.get(variable));
     }
 
     @Override
-    Behaviour realValues(HashMap<String, String> substitutions) {
+    Behaviour realValues(Map<String, String> substitutions) {
         return new Spawn(variable, processBehaviour, continuation);
     }
 
@@ -36,7 +36,9 @@ public class Spawn extends Behaviour.Interaction {
     }
 
     @Override
-    public boolean equals(Behaviour other) {
+    boolean equalsStructurally(Behaviour other) {
+        if (this == other)
+            return true;
         if (!(other instanceof Spawn otherSpawn))
             return false;
         return variable.equals(otherSpawn.variable) &&
@@ -49,6 +51,12 @@ public class Spawn extends Behaviour.Interaction {
         return other instanceof Spawn spawn && variable.equals(spawn.variable);
     }
 
+    @Override
+    boolean shallowEquals(Behaviour other){
+        return other instanceof Spawn spawn && variable.equals(spawn.variable) &&
+                processBehaviour == spawn.processBehaviour && continuation == spawn.continuation;
+    }
+
     @Override
     public String toString() {
         return String.format("spawn %s with %s continue %s", variable, processBehaviour, continuation);
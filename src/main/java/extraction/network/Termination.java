@@ -1,6 +1,6 @@
 package extraction.network;
 
-import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Behavior representing termination of a process
@@ -15,7 +15,7 @@ public class Termination extends Behaviour {
     static final String terminationTerm = "stop";
 
     @Override
-    Behaviour realValues(HashMap<String, String> substitutions){
+    Behaviour realValues(Map<String, String> substitutions){
         return this;
     }
 
@@ -34,7 +34,7 @@ public class Termination extends Behaviour {
     }
 
     @Override
-    public boolean equals(Behaviour other){
+    boolean equalsStructurally(Behaviour other){
         return other instanceof Termination;
     }
 
@@ -0,0 +1,156 @@
+package extraction.network;
+
+import extraction.network.Behaviour.BreakBehaviour;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the process names and variables used by a process, which decides which variable bindings matter
+ * when checking if a loop can be formed in the SEG.<br>
+ * Behaviours are immutable, so each Behaviour is summarised by the names it uses and the procedures it invokes
+ * the first time it is needed, and the summary is stored in the Behaviour itself. The names used by a procedure,
+ * including the procedures it invokes, are stored in a map shared by all copies of a ProcessTerm and the
+ * processes spawned from it. Finding the used variables of a process is then a lookup of its main Behaviour,
+ * and the procedures it invokes.
+ */
+public final class UsedVariables {
+    private static final LongAdder lookups = new LongAdder();
+    private static final LongAdder behavioursSummarised = new LongAdder();
+    private static final LongAdder proceduresSummarised = new LongAdder();
+
+    /**
+     * @param names The names used by a Behaviour and its continuations and branches, but not the procedures it invokes.
+     * @param invoked The procedures invoked by the Behaviour and its continuations and branches.
+     */
+    record Summary(Set<String> names, Set<String> invoked){}
+    private static final Summary EMPTY = new Summary(Set.of(), Set.of());
+
+    private UsedVariables(){}
+
+    /**
+     * Returns the names used by a Behaviour, and all the procedures it invokes, directly or indirectly.
+     * Spawned behaviours are not included, as the spawned process cannot learn of a process outside its parents set.
+     * @param main The Behaviour to find the used names of.
+     * @param procedures The procedures of the process.
+     * @param procedureNames Cache of the names used by each procedure. Must only be shared by terms with
+     *                       the same procedures.
+     */
+    static Set<String> of(Behaviour main, Map<String, Behaviour> procedures, ConcurrentHashMap<String, Set<String>> procedureNames){
+        lookups.increment();
+        Summary summary = summary(main);
+        if (summary.invoked().isEmpty())
+            return summary.names();
+        var used = new HashSet<>(summary.names());
+        for (String procedure : summary.invoked())
+            used.addAll(ofProcedure(procedure, procedures, procedureNames));
+        return Collections.unmodifiableSet(used);
+    }
+
+    private static Set<String> ofProcedure(String procedure, Map<String, Behaviour> procedures,
+                                           ConcurrentHashMap<String, Set<String>> procedureNames){
+        Set<String> used = procedureNames.get(procedure);
+        if (used != null)
+            return used;
+        proceduresSummarised.increment();
+        var names = new HashSet<String>();
+        var visited = new HashSet<String>();
+        var unvisited = new ArrayDeque<String>();
+        visited.add(procedure);
+        unvisited.add(procedure);
+        while (!unvisited.isEmpty()){
+            Summary summary = summary(procedures.get(unvisited.poll()));
+            names.addAll(summary.names());
+            for (String invoked : summary.invoked()){
+                if (visited.add(invoked))
+                    unvisited.add(invoked);
+            }
+        }
+        used = Set.copyOf(names);
+        procedureNames.putIfAbsent(procedure, used);
+        return used;
+    }
+
+    /**
+     * Returns the summary of a Behaviour, calculating it if this is the first time it is needed.
+     * Threads may calculate the same summary at once, but they all calculate the same one.
+     */
+    static Summary summary(Behaviour behaviour){
+        if (behaviour instanceof Termination || behaviour instanceof BreakBehaviour)
+            return EMPTY;
+        Summary summary = behaviour.usedVariables;
+        if (summary == null){
+            summary = summarise(behaviour);
+            behaviour.usedVariables = summary;
+        }
+        return summary;
+    }
+
+    private static Summary summarise(Behaviour behaviour){
+        behavioursSummarised.increment();
+        var names = new HashSet<String>();
+        var invoked = new HashSet<String>();
+        switch (behaviour){
+            case Spawn spawn:
+                break;
+            case Introduce introducer:
+                names.add(introducer.leftReceiver);
+                names.add(introducer.rightReceiver);
+                break;
+            case Introductee introductee:
+                names.add(introductee.processID);
+                names.add(introductee.sender);
+                break;
+            case Condition condition:
+                add(summary(condition.thenBehaviour), names, invoked);
+                add(summary(condition.elseBehaviour), names, invoked);
+                break;
+            case Offering offer:
+                names.add(offer.sender);
+                offer.branches.values().forEach(branch -> add(summary(branch), names, invoked));
+                break;
+            case Selection selector:
+                names.add(selector.receiver);
+                break;
+            case Receive receiver:
+                names.add(receiver.sender);
+                break;
+            case Send sender:
+                names.add(sender.receiver);
+                break;
+            case ProcedureInvocation invocation:
+                names.addAll(invocation.getParameters());
+                invoked.add(invocation.procedure);
+                break;
+            default:
+                throw new UnsupportedOperationException("While finding used variable names, encountered term with behaviour of type " + behaviour.getClass().getName() + " which is not applicable");
+        }
+        Summary continuation = summary(behaviour.continuation);
+        //Most Behaviours use names their continuation also uses, so their summaries can be shared
+        if (continuation.names().containsAll(names) && continuation.invoked().containsAll(invoked))
+            return continuation;
+        add(continuation, names, invoked);
+        return new Summary(Set.copyOf(names), Set.copyOf(invoked));
+    }
+
+    private static void add(Summary summary, Set<String> names, Set<String> invoked){
+        names.addAll(summary.names());
+        invoked.addAll(summary.invoked());
+    }
+
+    /**
+     * @return The number of times the used variables of a process has been looked up.
+     */
+    public static long lookups(){return lookups.sum();}
+
+    /**
+     * @return The number of Behaviours that has been traversed to summarise their used names.
+     */
+    public static long behavioursSummarised(){return behavioursSummarised.sum();}
+
+    /**
+     * @return The number of procedures whose used names, including invoked procedures, has been collected.
+     */
+    public static long proceduresSummarised(){return proceduresSummarised.sum();}
+}
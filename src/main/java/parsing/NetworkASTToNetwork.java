@@ -8,6 +8,7 @@ import org.antlr.v4.runtime.tree.TerminalNode;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 /**
@@ -34,7 +35,7 @@ class NetworkASTToNetwork extends NetworkBaseVisitor<NetworkASTNode> {
 
     @Override public NetworkASTNode visitNetwork(NetworkContext ctx){
         int numOfProcesses = ctx.processBehaviour().size();
-        HashMap<String, ProcessTerm> networkMapping = new HashMap<>(numOfProcesses);
+        HashMap<String, ProcessTerm> networkMapping = new LinkedHashMap<>(numOfProcesses);
         for (int i = 0; i < numOfProcesses; i++){
             networkMapping.put(ctx.process(i).getText(), (ProcessTerm) visit(ctx.processBehaviour(i)));
         }
@@ -55,7 +56,9 @@ class NetworkASTToNetwork extends NetworkBaseVisitor<NetworkASTNode> {
                 parameters.put(procedureName, List.of());
         }
 
-        return new ProcessTerm(procedures, parameters, (Behaviour) visit(ctx.behaviour()));
+        //Hash-cons the behaviours, so structurally identical subtrees are the same instance
+        BehaviourInterner.internAll(procedures);
+        return new ProcessTerm(procedures, parameters, BehaviourInterner.intern((Behaviour) visit(ctx.behaviour())));
     }
 
     @Override public NetworkASTNode visitNothing(NothingContext ctx){
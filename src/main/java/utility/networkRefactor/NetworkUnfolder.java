@@ -16,7 +16,7 @@ When trying to commit, I got a warning about being unable to check for null expr
 
 The cursed code turned out to be
             for (var name : result.procedures.keySet()){
-                result.procedures.put(name, compute(result.procedures.get(name), processTerm.procedures, p));
+                result.procedures.put(name, compute(result.procedures.get(name), processTerm.procedures(), p));
             }
 specifically the loop body seemed to be the power behind the curse. Replacing it by replaceAll()
 seems to have fixed it. I pray it has been fixed for good
@@ -28,7 +28,7 @@ public class NetworkUnfolder {
         var result = new ProcessTerm.HackProcessTerm( processTerm.copy() );
         for (int i = 0; i < iterations; i++){
             result.changeMain( compute(result.main(), result.procedures, p) );
-            result.procedures.replaceAll((n, v) -> compute(result.procedures.get(n), processTerm.procedures, p));
+            result.procedures.replaceAll((n, v) -> compute(result.procedures.get(n), processTerm.procedures(), p));
         }
         return result.term;
     }
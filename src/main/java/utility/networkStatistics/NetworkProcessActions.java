@@ -18,7 +18,7 @@ public class NetworkProcessActions implements TreeVisitor<Integer, NetworkASTNod
             case ProcessTerm host:
                 //I'm assuming this is equivalent to the foldRight method in Kotlin
                 int sum = 0;
-                for (var procedure : host.procedures.values()){
+                for (var procedure : host.procedures().values()){
                     sum += procedure.accept(this);
                 }
                 return sum + host.runtimeMain().accept(this);
@@ -19,7 +19,7 @@ public class NetworkProcessActionsPerProcedure implements TreeVisitor<Integer, N
             }
             case ProcessTerm host:
                 int sum = 0;
-                for (var procedure : host.procedures.values()){
+                for (var procedure : host.procedures().values()){
                     sum += procedure.accept(this);
                 }
                 return sum;
@@ -47,7 +47,7 @@ public class NetworkProcessActionsPerProcedure implements TreeVisitor<Integer, N
 
     ArrayList<Integer> getLength(ProcessTerm term){
         var actionsProcedures = new ArrayList<Integer>();
-        term.procedures.forEach((__, procedure) -> actionsProcedures.add(procedure.accept(this)));
+        term.procedures().forEach((__, procedure) -> actionsProcedures.add(procedure.accept(this)));
         return actionsProcedures;
     }
 }
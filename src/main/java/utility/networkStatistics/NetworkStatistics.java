@@ -57,7 +57,7 @@ public class NetworkStatistics {
 
         network.processes.forEach((__, processTerm) ->{
             lengthOfProcesses.add(new NetworkProcessActions().Visit(processTerm));
-            numberOfProcedures.add(processTerm.procedures.size());
+            numberOfProcedures.add(processTerm.procedures().size());
             numberOfConditionals.add(new NetworkProcessConditionals().Visit(processTerm));
             lengthOfProcedures.addAll(new NetworkProcessActionsPerProcedure().getLength(processTerm));
         });
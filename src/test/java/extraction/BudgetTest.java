@@ -0,0 +1,77 @@
+package extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+public class BudgetTest {
+    //Two loops of coprime length, which gives an SEG of over ten thousand nodes
+    private static final String largeNetwork = loopingPair("a", "b", 101) + " | " + loopingPair("c", "d", 103);
+    //A conditional, where both branches have loops of coprime length, which gives an SEG of about 300 nodes
+    private static final String branchingNetwork = "p { main { if e then a+l; b+l; stop else a+r; b+r; stop } } | " +
+            "a { def L { %s L } def R { %s R } main { p&{l: L, r: R} } } | ".formatted("b!<l>; ".repeat(11), "b!<r>; ".repeat(11)) +
+            "b { def Y { %s Y } main { p&{l: Y, r: Y} } } | ".formatted("a?; ".repeat(11)) + loopingPair("c", "d", 13);
+
+    static String loopingPair(String sender, String receiver, int k){
+        var send = new StringBuilder();
+        var receive = new StringBuilder();
+        for (int i = 0; i < k; i++){
+            send.append("%s!<m%d>; ".formatted(receiver, i));
+            receive.append("%s?; ".formatted(sender));
+        }
+        return "%s { def X { %sX } main { X } } | %s { def Y { %sY } main { Y } }".formatted(
+                sender, send, receiver, receive);
+    }
+
+    private static Extraction.Data extract(ExtractionBudget budget){
+        var result = Extraction.newExtractor().sequentialExtraction().setBudget(budget).extract(largeNetwork, Set.of());
+        Assertions.assertNull(result.program.choreographies.get(0));
+        return result.extractionInfo.get(0);
+    }
+
+    @Test
+    void NodeLimit(){
+        var data = extract(new ExtractionBudget().setNodeLimit(500));
+        Assertions.assertEquals(BuildGraphResult.BUDGET_EXCEEDED, data.result());
+        Assertions.assertTrue(data.nodeCount() <= 501);
+    }
+
+    @Test //Else branches built in parallel count towards the limits of the graph they are built for
+    void NodeLimitWithParallelConditionals(){
+        var data = Extraction.newExtractor().sequentialExtraction().parallelConditionals()
+                .setBudget(new ExtractionBudget().setNodeLimit(200)).extract(branchingNetwork, Set.of()).extractionInfo.get(0);
+        Assertions.assertEquals(BuildGraphResult.BUDGET_EXCEEDED, data.result());
+        //Each thread building the graph may add a node before it sees that the limit is exceeded
+        Assertions.assertTrue(data.nodeCount() <= 201 + ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    @Test
+    void TimeLimit(){
+        var data = extract(new ExtractionBudget().setTimeLimit(Duration.ofMillis(1)));
+        Assertions.assertEquals(BuildGraphResult.TIMEOUT, data.result());
+    }
+
+    @Test
+    void Cancelled(){
+        var budget = new ExtractionBudget();
+        budget.cancel();
+        Assertions.assertEquals(BuildGraphResult.CANCELLED, extract(budget).result());
+    }
+
+    @Test //Extractions within budget are unaffected
+    void WithinBudget(){
+        String network = "a {def Y {c?; d!<free>; X} def X {if e then b+win; c+lose; b?; Y else b+lose; c+win; b?; Y} main {X}} |" +
+                "b {def X {a&{win: a!<sig>; X, lose: a!<sig>; X}} main {X}} |" +
+                "c {def X {d!<busy>; a&{win: a!<msg>; X, lose: a!<msg>; X}} main {X}} |" +
+                "d {def X {c?; a?; X} main {X}}";
+        var budget = new ExtractionBudget().setTimeLimit(Duration.ofMinutes(1)).setNodeLimit(1000)
+                .setBadLoopLimit(1000).setHeapGrowthLimit(1L << 30);
+        var expected = Extraction.newExtractor().extract(network, Set.of());
+        var actual = Extraction.newExtractor().setBudget(budget).extract(network, Set.of());
+        Assertions.assertEquals(expected.program.toString(), actual.program.toString());
+        Assertions.assertEquals(BuildGraphResult.OK, actual.extractionInfo.get(0).result());
+    }
+}
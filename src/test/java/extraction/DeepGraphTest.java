@@ -0,0 +1,62 @@
+package extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import parsing.Parser;
+
+import java.util.Set;
+
+public class DeepGraphTest {
+    /**
+     * Creates a network where sender sends k messages to receiver in a loop.
+     */
+    private static String loopingPair(String sender, String receiver, int k){
+        var send = new StringBuilder();
+        var receive = new StringBuilder();
+        for (int i = 0; i < k; i++){
+            send.append("%s!<m%d>; ".formatted(receiver, i));
+            receive.append("%s?; ".formatted(sender));
+        }
+        return "%s { def X { %sX } main { X } } | %s { def Y { %sY } main { Y } }".formatted(
+                sender, send, receiver, receive);
+    }
+
+    /**
+     * Runs the task in a thread with a stack of 512KB, and returns what the task threw, if anything.
+     */
+    private static Throwable onSmallStack(Runnable task){
+        final Throwable[] thrown = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                task.run();
+            } catch (Throwable t){
+                thrown[0] = t;
+            }
+        }, "small stack", 1 << 19);
+        thread.start();
+        Assertions.assertDoesNotThrow(() -> thread.join());
+        return thrown[0];
+    }
+
+    @Test //Two loops of coprime length gives an SEG over ten thousand nodes deep. Building it must not use the thread stack.
+    void DeepSEGOnSmallStack(){
+        String network = loopingPair("a", "b", 101) + " | " + loopingPair("c", "d", 103);
+        final GraphBuilder.SEGContainer[] container = new GraphBuilder.SEGContainer[1];
+        Assertions.assertNull(onSmallStack(() ->
+                container[0] = GraphBuilder.buildSEG(Parser.stringToNetwork(network), Set.of(), Strategy.Default)));
+
+        Assertions.assertEquals(BuildGraphResult.OK, container[0].buildGraphResult());
+        Assertions.assertTrue(container[0].graph().nodeCount() > 10000);
+    }
+
+    @Test //The choreography extracted from the deep SEG is as deep, and building it must not use the thread stack either.
+    void DeepExtractionOnSmallStack(){
+        String network = loopingPair("a", "b", 101) + " | " + loopingPair("c", "d", 103);
+        final Extraction.ExtractionResult[] result = new Extraction.ExtractionResult[1];
+        Assertions.assertNull(onSmallStack(() ->
+                result[0] = Extraction.newExtractor().sequentialExtraction().extract(network)));
+
+        Assertions.assertEquals(BuildGraphResult.OK, result[0].extractionInfo.get(0).result());
+        Assertions.assertNotNull(result[0].program.choreographies.get(0));
+    }
+}
@@ -3,6 +3,8 @@ package extraction;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+
 public class IntroductionTest {
 
     @Test
@@ -28,4 +30,29 @@ public class IntroductionTest {
 
         Assertions.assertEquals(expected, actual);
     }
+
+    @Test //Copies of the matrix of known processes share data, but changing one does not change the others
+    void copiedMatricesAreIndependent(){
+        var names = new ArrayList<String>();
+        for (int i = 0; i < 70; i++)
+            names.add("p" + i);
+        var original = new AdjacencyMatrix(names);
+        original.spawn("p3", "child");
+        var copy = original.copy();
+        copy.spawn("p69", "grandchild");
+        copy.introduce("child", "p68");
+
+        Assertions.assertTrue(original.isIntroduced("p0", "p69"));
+        Assertions.assertTrue(original.isIntroduced("child", "p3"));
+        Assertions.assertFalse(original.isIntroduced("child", "p68"));
+        Assertions.assertTrue(copy.isIntroduced("child", "p68"));
+        Assertions.assertTrue(copy.isIntroduced("grandchild", "p69"));
+        Assertions.assertFalse(copy.isIntroduced("grandchild", "child"));
+
+        original.introduce("child", "p68");
+        Assertions.assertNotEquals(original, copy);
+        var other = original.copy();
+        other.spawn("p69", "grandchild");
+        Assertions.assertEquals(copy, other);
+    }
 }
@@ -2,6 +2,7 @@ package extraction;
 
 import extraction.choreography.Choreography;
 import extraction.network.Network;
+import extraction.network.UsedVariables;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
@@ -9,6 +10,10 @@ import org.junit.jupiter.api.function.Executable;
 import parsing.Parser;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class LoopClosureTest {
     @Test //Ensure that resource leaks are detected, to prevent generating infinite SEGs
@@ -44,4 +49,175 @@ public class LoopClosureTest {
         Assertions.assertNull(actual[0]);
     }
 
+    @Test //Fingerprints ignore process names, but count identical processes
+    void FingerprintIsNameIndependentMultiset(){
+        Network first = Parser.stringToNetwork("p { main { q!<m>; stop } } | q { main { p?; stop } } | r { main { q!<m>; stop } }");
+        Network renamed = Parser.stringToNetwork("a { main { q!<m>; stop } } | q { main { p?; stop } } | r { main { q!<m>; stop } }");
+        Network fewer = Parser.stringToNetwork("p { main { q!<m>; stop } } | q { main { p?; stop } }");
+        var marking = new Marking(new ProcessNames());
+        for (String process : new String[]{"p", "a", "q", "r"})
+            marking.put(process, false);
+
+        var firstPrint = NetworkFingerprint.of(first, marking);
+        var renamedPrint = NetworkFingerprint.of(renamed, marking);
+        var fewerPrint = NetworkFingerprint.of(fewer, marking);
+        Assertions.assertEquals(firstPrint, renamedPrint);
+        //Same set of distinct terms, so the same bucket, but different multisets
+        Assertions.assertEquals(firstPrint.key(), fewerPrint.key());
+        Assertions.assertFalse(firstPrint.sameMultiset(fewerPrint));
+        Assertions.assertEquals(3, firstPrint.unmarked());
+    }
+
+    @Test //Loop closure is counted in the statistics of the extraction
+    void LoopClosureStatistics(){
+        String network = "p { def X{ q!<m>; X } main { X } } | q { def Y{ p?; Y } main { Y } }";
+        var result = Extraction.newExtractor().extract(network, Set.of());
+        var statistics = result.extractionInfo.get(0).statistics();
+        Assertions.assertNotNull(result.program.choreographies.get(0));
+        Assertions.assertTrue(statistics.fingerprintLookups > 0);
+        Assertions.assertTrue(statistics.mappingAttempts > 0);
+        Assertions.assertTrue(statistics.falsePositiveRate() < 1);
+    }
+
+    @Test //Processes with identical terms are mapped such that the processes they know of are mapped consistently
+    void BijectiveMappingRespectsVariables(){
+        String defs = "def L(q){ q!<m>; L(q) } def R(q){ q?; R(q) } ";
+        Network from = Parser.stringToNetwork(
+                "a1 { %1$s main { L(b1) } } | b1 { %1$s main { R(a1) } } | a2 { %1$s main { L(b2) } } | b2 { %1$s main { R(a2) } }".formatted(defs));
+        Network to = Parser.stringToNetwork(
+                "c1 { %1$s main { L(d2) } } | d2 { %1$s main { R(c1) } } | c2 { %1$s main { L(d1) } } | d1 { %1$s main { R(c2) } }".formatted(defs));
+        from.unfold();
+        to.unfold();
+
+        var mapping = BijectiveMapping.find(from, to);
+        Assertions.assertNotNull(mapping);
+        Assertions.assertEquals(4, mapping.size());
+        Assertions.assertEquals(mapping.get("a1").equals("c1") ? "d2" : "d1", mapping.get("b1"));
+        Assertions.assertEquals(mapping.get("a2").equals("c1") ? "d2" : "d1", mapping.get("b2"));
+    }
+
+    @Test //Two pairs of processes knowing each other cannot be renamed into a cycle of four processes
+    void BijectiveMappingRejectsDifferentStructure(){
+        String defs = "def L(q){ q!<m>; L(q) } def R(q){ q?; R(q) } ";
+        Network pairs = Parser.stringToNetwork(
+                "a1 { %1$s main { L(b1) } } | b1 { %1$s main { R(a1) } } | a2 { %1$s main { L(b2) } } | b2 { %1$s main { R(a2) } }".formatted(defs));
+        Network cycle = Parser.stringToNetwork(
+                "c1 { %1$s main { L(d1) } } | d1 { %1$s main { R(c2) } } | c2 { %1$s main { L(d2) } } | d2 { %1$s main { R(c1) } }".formatted(defs));
+        pairs.unfold();
+        cycle.unfold();
+
+        Assertions.assertNull(BijectiveMapping.find(pairs, cycle));
+    }
+
+    @Test //Processes that have the same name in both networks may swap names with renamed processes of the same term
+    void BijectiveMappingSwapsWithRenamedProcesses(){
+        String defs = "def L(q){ q!<m>; L(q) } def R(q){ q?; R(q) } ";
+        Network from = Parser.stringToNetwork(
+                "a { %1$s main { L(b) } } | b { %1$s main { R(a) } } | c { %1$s main { L(d) } } | d { %1$s main { R(c) } }".formatted(defs));
+        Network to = Parser.stringToNetwork(
+                "a { %1$s main { L(e) } } | e { %1$s main { R(a) } } | x { %1$s main { L(b) } } | b { %1$s main { R(x) } }".formatted(defs));
+        from.unfold();
+        to.unfold();
+
+        //a and b cannot both keep their names, as a sends to b in one network and to e in the other
+        Assertions.assertEquals(Map.of("b", "e", "c", "x", "d", "b"), BijectiveMapping.find(from, to));
+    }
+
+    @Test //Processes keeping their names may have to swap names with interchangeable processes
+    void BijectiveMappingSearchesOrbit(){
+        String defs = "def L(q){ q!<m>; L(q) } def R(q){ q?; R(q) } ";
+        Network from = Parser.stringToNetwork(
+                "a1 { %1$s main { L(b1) } } | b1 { %1$s main { R(a1) } } | a2 { %1$s main { L(b2) } } | b2 { %1$s main { R(a2) } }".formatted(defs));
+        Network to = Parser.stringToNetwork(
+                "a1 { %1$s main { L(b2) } } | b2 { %1$s main { R(a1) } } | a2 { %1$s main { L(b1) } } | b1 { %1$s main { R(a2) } }".formatted(defs));
+        from.unfold();
+        to.unfold();
+
+        Assertions.assertNull(BijectiveMapping.find(from, to));
+        Assertions.assertEquals(2, BijectiveMapping.findInOrbit(from, to, (process, renamed) -> true).size());
+        //If the senders must keep their names, the receivers are swapped
+        Assertions.assertEquals(Map.of("b1", "b2", "b2", "b1"), BijectiveMapping.findInOrbit(from, to,
+                (process, renamed) -> !process.startsWith("a") || process.equals(renamed)));
+        Assertions.assertNull(BijectiveMapping.findInOrbit(from, to, String::equals));
+    }
+
+    @Test //States that only differ by which of two identical children has advanced share a node
+    void SymmetricStatesShareNode(){
+        String network = "p { def W(b){ b?; W(b) } def X(x,y){ x!<t>; x!<t>; y!<t>; X(y,x) } " +
+                "main { spawn c0 with W(p) continue spawn c1 with W(p) continue X(c0,c1) } }";
+        var result = Extraction.newExtractor().extract(network, Set.of());
+        var data = result.extractionInfo.get(0);
+
+        Assertions.assertEquals("def X1(p/c00, p/c11) { p.t->p/c00; p.t->p/c11; p.t->p/c11; X1(p/c11, p/c00) } " +
+                "main {p spawns p/c00; p spawns p/c11; p.t->p/c00; X1(p/c00, p/c11)}", result.program.toString());
+        Assertions.assertEquals(6, data.nodeCount());
+        Assertions.assertEquals(1, data.statistics().symmetricLoops);
+    }
+
+    @Test //Used variables include invoked procedures, and are only searched for once
+    void UsedVariablesAreSummarisedOnce(){
+        Network network = Parser.stringToNetwork(
+                "p { def X(a){ a!<m>; if c then Y(b) else stop } def Y(x){ x?; X(d) } main { q!<start>; X(r) } } | " +
+                "q { main { p?; stop } } | r { main { p?; stop } } | b { main { stop } } | d { main { stop } }");
+        var term = network.processes.get("p");
+        Assertions.assertEquals(Set.of("q", "r", "a", "b", "d", "x"), term.usedVariables());
+
+        long summarised = UsedVariables.behavioursSummarised() + UsedVariables.proceduresSummarised();
+        Assertions.assertEquals(term.usedVariables(), term.copy().usedVariables());
+        Assertions.assertEquals(summarised, UsedVariables.behavioursSummarised() + UsedVariables.proceduresSummarised());
+    }
+
+    @Test //A loop cannot go to a node where a process unmarked here is marked, unless it has terminated
+    void MarkingCompatibilityFollowsRenaming(){
+        Network network = Parser.stringToNetwork(
+                "p { main { q!<m>; stop } } | q { main { p?; stop } } | r { main { q!<m>; stop } } | s { main { stop } }");
+        var names = new ProcessNames();
+        var current = new Marking(names);
+        var other = new Marking(names);
+        current.put("p", false); current.put("q", true); current.put("r", true); current.put("s", false);
+        other.put("p", true); other.put("q", true); other.put("r", false); other.put("s", true);
+
+        Assertions.assertFalse(current.compatibleWith(other, Map.of(), network));
+        //p is renamed to the unmarked r, and s has terminated
+        Assertions.assertTrue(current.compatibleWith(other, Map.of("p", "r", "r", "p"), network));
+        Assertions.assertFalse(current.allMarked());
+        current.reset(process -> !process.equals("s"));
+        Assertions.assertTrue(current.isMarked("p") && !current.isMarked("s"));
+    }
+
+    @Test //The UnmarkedThen strategies go through the processes in the order they were added to the marking
+    void MarkingIteratesInInsertionOrder(){
+        var processes = new ArrayList<String>();
+        for (int i = 0; i < 23; i++)
+            processes.add("process" + i * 7);
+        var marking = new Marking(new ProcessNames());
+        var expected = new ArrayList<Map.Entry<String, Boolean>>();
+        processes.forEach(process -> {
+            marking.put(process, process.length() % 2 == 0);
+            expected.add(Map.entry(process, process.length() % 2 == 0));
+        });
+        Assertions.assertEquals(expected, entries(marking));
+
+        //Copies keep the order, marking a process does not move it, and spawned processes come last
+        var copy = marking.copy();
+        var expectedCopy = new ArrayList<>(expected);
+        copy.put("process7", true);
+        expectedCopy.set(1, Map.entry("process7", true));
+        for (String parent : List.of("process0", "process14")){
+            for (String spawned : List.of(parent + "/child0", parent + "/child1")){
+                copy.put(spawned, true);
+                expectedCopy.add(Map.entry(spawned, true));
+            }
+            copy = copy.copy();
+        }
+        Assertions.assertEquals(expectedCopy, entries(copy));
+        Assertions.assertEquals(expected, entries(marking));
+    }
+
+    private static List<Map.Entry<String, Boolean>> entries(Marking marking){
+        var entries = new ArrayList<Map.Entry<String, Boolean>>();
+        marking.forEach((process, marked) -> entries.add(Map.entry(process, marked)));
+        return entries;
+    }
+
 }
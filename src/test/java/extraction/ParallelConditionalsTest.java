@@ -0,0 +1,73 @@
+package extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+public class ParallelConditionalsTest {
+    /**
+     * Extracts the network both sequentially and with else branches build in parallel,
+     * and checks that the results are identical.
+     */
+    private static void assertSameAsSequential(String network){
+        var sequential = Extraction.newExtractor().extract(network);
+        var parallel = Extraction.newExtractor().parallelConditionals().extract(network);
+
+        Assertions.assertEquals(sequential.program.toString(), parallel.program.toString());
+        Assertions.assertEquals(sequential.extractionInfo.size(), parallel.extractionInfo.size());
+        for (int i = 0; i < sequential.extractionInfo.size(); i++){
+            var expected = sequential.extractionInfo.get(i);
+            var actual = parallel.extractionInfo.get(i);
+            Assertions.assertEquals(expected.result(), actual.result());
+            Assertions.assertEquals(expected.nodeCount(), actual.nodeCount());
+            Assertions.assertEquals(expected.badLoopCount(), actual.badLoopCount());
+            Assertions.assertEquals(nodeIDs(expected.symbolicExecutionGraph().vertexSet()),
+                    nodeIDs(actual.symbolicExecutionGraph().vertexSet()));
+        }
+    }
+
+    //The IDs and choice paths of the nodes in a graph
+    private static Set<String> nodeIDs(Set<Node> nodes){
+        var ids = new TreeSet<String>();
+        nodes.forEach(node -> {
+            if (node instanceof Node.ConcreteNode concrete)
+                ids.add(concrete.ID + concrete.choicePath.toString());
+        });
+        return ids;
+    }
+
+    @Test
+    void NestedConditionals(){
+        assertSameAsSequential(
+                "p { def X { if c1 then q!<a>; if c2 then q!<b>; X else q!<c>; X " +
+                        "else q!<d>; if c3 then q!<e>; X else q!<f>; X } main { X } } | " +
+                "q { def Y { p?; p?; Y } main { Y } }");
+    }
+
+    @Test //Branches that loop back to nodes of each other
+    void ConditionalsWithSelections(){
+        assertSameAsSequential(
+                "a {def Y {c?; d!<free>; X} def X {if e then b+win; c+lose; b?; Y else b+lose; c+win; b?; Y} main {X}} |" +
+                "b {def X {a&{win: a!<sig>; X, lose: a!<sig>; X}} main {X}} |" +
+                "c {def X {d!<busy>; a&{win: a!<msg>; X, lose: a!<msg>; X}} main {X}} |" +
+                "d {def X {c?; a?; X} main {X}}");
+    }
+
+    @Test
+    void ConcurrentConditionals(){
+        assertSameAsSequential(
+                "a { def X { if e then b!<t>; X else b!<f>; if g then b!<u>; X else b!<v>; X } main { X } } | " +
+                "b { def Y { a?; c!<m>; Y } main { Y } } | " +
+                "c { def Z { if h then b?; d+l; Z else b?; d+r; Z } main { Z } } | " +
+                "d { def W { c&{l: W, r: W} } main { W } }");
+    }
+
+    @Test //Failing else branches must discard the then branch, just as when building sequentially
+    void UnextractableElseBranch(){
+        assertSameAsSequential(
+                "p { main { if e then q!<a>; stop else q!<b>; q!<c>; stop } } | " +
+                "q { main { p?; stop } }");
+    }
+}
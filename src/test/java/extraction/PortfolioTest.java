@@ -0,0 +1,86 @@
+package extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+public class PortfolioTest {
+    private static final String network =
+            "a {def Y {c?; d!<free>; X} def X {if e then b+win; c+lose; b?; Y else b+lose; c+win; b?; Y} main {X}} |" +
+            "b {def X {a&{win: a!<sig>; X, lose: a!<sig>; X}} main {X}} |" +
+            "c {def X {d!<busy>; a&{win: a!<msg>; X, lose: a!<msg>; X}} main {X}} |" +
+            "d {def X {c?; a?; X} main {X}}";
+    private static final List<Strategy> strategies = List.of(
+            Strategy.InteractionsFirst, Strategy.ConditionsFirst, Strategy.LongestFirst, Strategy.UnmarkedThenSelections);
+
+    @Test //The result is the same as extracting with the strategy that was kept
+    void FirstSuccessfulStrategy(){
+        var result = Extraction.newExtractor().setPortfolio(strategies.toArray(new Strategy[0])).extract(network, Set.of());
+        var data = result.extractionInfo.get(0);
+
+        Assertions.assertEquals(BuildGraphResult.OK, data.result());
+        Assertions.assertTrue(strategies.contains(data.strategy()));
+        var expected = Extraction.newExtractor().setStrategy(data.strategy()).extract(network, Set.of());
+        Assertions.assertEquals(expected.program.toString(), result.program.toString());
+        Assertions.assertEquals(expected.extractionInfo.get(0).nodeCount(), data.nodeCount());
+    }
+
+    @Test //With enough time, the smallest graph is kept, and the earliest strategy if graphs are equally small
+    void SmallestGraph(){
+        var result = Extraction.newExtractor().setPortfolio(Duration.ofMinutes(1), strategies.toArray(new Strategy[0]))
+                .extract(network, Set.of());
+        var data = result.extractionInfo.get(0);
+
+        Strategy smallest = null;
+        int smallestCount = Integer.MAX_VALUE;
+        for (var strategy : strategies){
+            int nodeCount = Extraction.newExtractor().setStrategy(strategy).extract(network, Set.of()).extractionInfo.get(0).nodeCount();
+            if (nodeCount < smallestCount){
+                smallest = strategy;
+                smallestCount = nodeCount;
+            }
+        }
+        Assertions.assertEquals(smallest, data.strategy());
+        Assertions.assertEquals(smallestCount, data.nodeCount());
+    }
+
+    @Test //If no strategy succeeds, the failure of the first strategy is reported
+    void NoStrategySucceeds(){
+        String unextractable = "p { main { q?; stop } } | q { main { p?; stop } }";
+        var result = Extraction.newExtractor().setPortfolio(Strategy.ConditionsFirst, Strategy.InteractionsFirst)
+                .extract(unextractable, Set.of());
+        var data = result.extractionInfo.get(0);
+
+        Assertions.assertNull(result.program.choreographies.get(0));
+        Assertions.assertEquals(BuildGraphResult.FAIL, data.result());
+        Assertions.assertEquals(Strategy.ConditionsFirst, data.strategy());
+    }
+
+    @Test //Interrupting the thread extracting stops all strategies, and the first is reported as cancelled
+    void Interrupted() throws InterruptedException{
+        //Two loops of coprime length, which gives an SEG of over ten thousand nodes
+        String large = BudgetTest.loopingPair("a", "b", 101) + " | " + BudgetTest.loopingPair("c", "d", 103);
+        final Extraction.ExtractionResult[] result = new Extraction.ExtractionResult[1];
+        final Throwable[] thrown = new Throwable[1];
+        Thread thread = new Thread(() -> {
+            try {
+                result[0] = Extraction.newExtractor().sequentialExtraction()
+                        .setPortfolio(Strategy.Default, Strategy.InteractionsFirst).extract(large, Set.of());
+            } catch (Throwable t){
+                thrown[0] = t;
+            }
+        });
+        thread.start();
+        Thread.sleep(50);
+        thread.interrupt();
+        thread.join();
+
+        Assertions.assertNull(thrown[0]);
+        var data = result[0].extractionInfo.get(0);
+        Assertions.assertEquals(BuildGraphResult.CANCELLED, data.result());
+        Assertions.assertEquals(Strategy.Default, data.strategy());
+    }
+}
@@ -0,0 +1,61 @@
+package extraction;
+
+import extraction.network.Network;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import parsing.Parser;
+
+public class ReadySetTest {
+    private static final String network =
+            "a { def X{b!<m>; if e then c+ok; X else c+ko; stop} main{X} } | " +
+            "b { def Y{a?; Y} main{spawn q with b?; stop continue q!<hi>; Y} } | " +
+            "c { main{a&{ok: d!<n>; stop, ko: stop}} } | " +
+            "d { main{c?; stop} }";
+
+    @Test //An index updated for the actors of each advancement is the same as an index of the new network
+    void UpdatedForActors(){
+        var names = new ProcessNames();
+        Network current = Parser.stringToNetwork(network);
+        current.unfold();
+        var ready = ReadySet.of(names, current.processes.keySet());
+        ready.update(current);
+
+        assertIndexed(ready, current, "a", false, true, false);
+        assertIndexed(ready, current, "b", false, false, true);
+        assertIndexed(ready, current, "c", false, false, false);
+        assertIndexed(ready, current, "d", false, false, false);
+
+        //b spawns, b sends to its child, then a sends to b, branches, and selects at c
+        String[] actors = {"b", "b", "a", "a", "a"};
+        for (String actor : actors){
+            var next = current.copy();
+            var advancement = ready.maySpawn(actor) ? next.spawnAdvance(actor) : next.CommunicationConditionalAdvance(actor);
+            Assertions.assertNotNull(advancement, actor);
+            next.unfold();
+            ready = ready.child(advancement.actors());
+            ready.update(next);
+
+            var fresh = ReadySet.of(names, next.processes.keySet());
+            fresh.update(next);
+            for (String process : next.processes.keySet()){
+                Assertions.assertEquals(fresh.mayInteractOrBranch(process), ready.mayInteractOrBranch(process), process);
+                Assertions.assertEquals(fresh.maySendMulticom(process), ready.maySendMulticom(process), process);
+                Assertions.assertEquals(fresh.maySpawn(process), ready.maySpawn(process), process);
+            }
+            current = next;
+        }
+        //a loops and can send to b again, and c can send to d
+        assertIndexed(ready, current, "a", true, true, false);
+        assertIndexed(ready, current, "b", false, false, false);
+        assertIndexed(ready, current, "c", true, true, false);
+        assertIndexed(ready, current, "d", false, false, false);
+    }
+
+    private static void assertIndexed(ReadySet ready, Network network, String process,
+                                      boolean interaction, boolean sends, boolean spawns){
+        String main = network.processes.get(process).rawMain().toString();
+        Assertions.assertEquals(interaction, ready.mayInteractOrBranch(process), main);
+        Assertions.assertEquals(sends, ready.maySendMulticom(process), main);
+        Assertions.assertEquals(spawns, ready.maySpawn(process), main);
+    }
+}
@@ -4,8 +4,17 @@ import extraction.network.*;
 
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import parsing.Parser;
 
+import java.util.List;
+import java.util.Set;
+
 /**
  * Unit test for classes of the network package.
  */
@@ -39,4 +48,160 @@ public class TestNetwork {
         assertEquals(n.hashCode(), subn.hashCode());
     }
 
+    @Test
+    public void behavioursAreInterned(){
+        String network =
+                "a { def X{b!<m>; b?; X} main{c!<n>; b!<m>; b?; X} } | " +
+                "c { def X{b!<m>; b?; X} main{a?; b!<m>; b?; X} } | " +
+                "b { def X{a?; a!<r>; c?; c!<r>; X} main{X} }";
+        Network n = Parser.stringToNetwork(network);
+        ProcessTerm a = n.processes.get("a");
+        ProcessTerm c = n.processes.get("c");
+
+        //Structurally identical subtrees are the same instance, also across processes
+        assertSame(a.procedures().get("X"), c.procedures().get("X"));
+        assertSame(a.rawMain().continuation, c.rawMain().continuation);
+        //Different behaviours are not merged
+        assertNotSame(a.rawMain(), c.rawMain());
+
+        //Invocations with different parameters must remain distinct
+        Network parameterised = Parser.stringToNetwork(
+                "p { def X(q){q!<m>; stop} main{if e then X(q) else X(r)} } | q { main{p?; stop} } | r { main{p?; stop} }");
+        var condition = (Condition) parameterised.processes.get("p").rawMain();
+        assertNotSame(condition.thenBehaviour, condition.elseBehaviour);
+        assertEquals("X(q)", condition.thenBehaviour.toString());
+        assertEquals("X(r)", condition.elseBehaviour.toString());
+        //but they invoke the same procedure, so they are still equal
+        assertTrue(condition.thenBehaviour.equals(condition.elseBehaviour));
+        //Different interned behaviours are not equal
+        assertFalse(a.rawMain().equals(c.rawMain()));
+        assertTrue(a.rawMain().continuation.equals(c.rawMain().continuation));
+    }
+
+
+    @Test
+    public void workingCopyUndoesChanges(){
+        String network =
+                "a { def X{b!<m>; X} main{X} } | " +
+                "b { def Y{a?; Y} main{Y} } | " +
+                "c { main{spawn d with c?; stop continue d!<m>; stop} }";
+        Network original = Parser.stringToNetwork(network);
+        String before = original.toString();
+
+        Network working = original.workingCopy();
+        working.unfold();
+        working.checkpoint();
+        String unfolded = working.toString();
+
+        //Changes to the working copy are not visible in the network it was created from
+        assertNotNull(working.CommunicationConditionalAdvance("a"));
+        assertNotNull(working.spawnAdvance("c"));
+        assertEquals(before, original.toString());
+
+        //Snapshots keep their state when the working copy is rolled back
+        Network snapshot = working.snapshot();
+        String advanced = snapshot.toString();
+        working.rollback();
+        assertEquals(unfolded, working.toString());
+        assertEquals(advanced, snapshot.toString());
+        assertTrue(snapshot.processes.containsKey("c/d0"));
+
+        //The working copy can advance again after a rollback, with a fresh process ID for the new spawn
+        assertNotNull(working.spawnAdvance("c"));
+        assertFalse(working.processes.containsKey("c/d0"));
+        assertTrue(working.processes.containsKey("c/d1"));
+        assertEquals(before, original.toString());
+    }
+
+    @Test
+    public void copiesDoNotSeeLaterChanges(){
+        String network =
+                "a { def X(q){q!<m>; b&{ok: q?; X(q), ko: stop}; b?; stop} main{X(c)} } | " +
+                "b { main{a+ok; a+ko; a!<n>; stop} } | c { main{a?; a!<r>; stop} }";
+        Network n = Parser.stringToNetwork(network);
+        n.unfold();
+        ProcessTerm a = n.processes.get("a");
+        ProcessTerm copy = a.copy();
+        assertTrue(copy.equals(a));
+        assertEquals(a.hashCode(), copy.hashCode());
+
+        //Substituting in the original is not visible in the copy
+        a.substitute("q", "b");
+        assertEquals("b", a.getVariables().get("q"));
+        assertEquals("c", copy.getVariables().get("q"));
+        a.substitute("q", "c");
+        assertTrue(copy.equals(a));
+
+        //Pushing and popping continuations in the original is not visible in the copy
+        String copied = copy.toString();
+        a.reduce();
+        a.reduce("ok");
+        assertEquals(copied, copy.toString());
+        assertFalse(copy.equals(a));
+    }
+
+    @Test
+    public void procedureTableIsShared(){
+        String network =
+                "a { def X{b!<m>; X} main{spawn q with b?; stop continue X} } | b { main{a?; q!<n>; stop} } | " +
+                "c { def Y{Z} def Z{stop} def U{V} def V{U} main{Y} } | d { def U{V} def V{U} main{U} }";
+        Network n = Parser.stringToNetwork(network);
+        ProcessTerm a = n.processes.get("a");
+        assertSame(a.procedures(), a.copy().procedures());
+
+        //The spawned child gets the procedures of its parent
+        var advancement = n.spawnAdvance("a");
+        assertNotNull(advancement);
+        assertEquals(2, advancement.actors().size());
+        for (String actor : advancement.actors())
+            assertSame(a.procedures(), advancement.network().processes.get(actor).procedures());
+
+        //Whether procedures expand to termination is summarised once, also for procedures invoking each other
+        assertTrue(n.processes.get("c").isTerminated());
+        assertFalse(n.processes.get("d").isTerminated());
+        assertEquals(List.of(), n.processes.get("c").procedures().parameters("Y"));
+    }
+
+    @Test
+    public void runtimeMainLength(){
+        String network =
+                "a { def X(p, q){p!<m>; q<->p; q&{ok: p?; X(p, q), ko: stop}} main{X(bee, c)} } | " +
+                "bee { main{a?; a!<n>; stop} } | c { main{a?longname; a+ok; a+ko; stop} }";
+        Network n = Parser.stringToNetwork(network);
+        n.processes.get("a").substitute("p", "bee");
+        n.processes.get("a").substitute("q", "c");
+        n.processes.get("c").substitute("longname", "bee");
+        assertEquals(3, n.processes.size());
+        n.processes.values().forEach(process ->
+                assertEquals(process.runtimeMain().toString().length(), process.runtimeMainLength()));
+
+        //The length follows the main behaviour as it is unfolded and reduced
+        n.unfold();
+        ProcessTerm a = n.processes.get("a");
+        for (int i = 0; i < 2; i++){
+            assertEquals(a.runtimeMain().toString().length(), a.runtimeMainLength());
+            a.reduce();
+        }
+        assertEquals(a.runtimeMain().toString().length(), a.runtimeMainLength());
+    }
+
+    @Test
+    public void multicomOnlyCopiesActors(){
+        String network =
+                "a { main{b!<m>; b?; stop} } | b { main{a!<n>; a?; stop} } | " +
+                "c { main{d!<o>; stop} } | d { main{c?; stop} }";
+        Network n = Parser.stringToNetwork(network);
+        String before = n.toString();
+
+        //c sends to a process that receives, which is a single interaction
+        assertNull(n.multicomAdvance("c"));
+        //a and b wait to send to each other, so they form a multicom
+        var advancement = n.multicomAdvance("a");
+        assertNotNull(advancement);
+        assertEquals(before, n.toString());
+        assertEquals(Set.of("a", "b"), advancement.actors());
+        //Processes that did not act are shared with the original network
+        assertSame(n.processes.get("c"), advancement.network().processes.get("c"));
+        assertNotSame(n.processes.get("a"), advancement.network().processes.get("a"));
+    }
 }